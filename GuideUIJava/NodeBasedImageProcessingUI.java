@@ -10,16 +10,89 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
+import java.awt.color.ColorSpace;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 
 public class NodeBasedImageProcessingUI extends JFrame {
     private NodeCanvas canvas;
     private JMenuBar menuBar;
     private JLabel statusLabel;
+    // 이미지 로드가 끝나면 결과를 알려 줄 리스너 (다시 로드하면 이전 것은 뗌)
+    private NodeListener loadResultListener;
     
     public NodeBasedImageProcessingUI() {
         initializeComponents();
@@ -37,6 +110,13 @@ public class NodeBasedImageProcessingUI extends JFrame {
         canvas = new NodeCanvas();
         add(canvas, BorderLayout.CENTER);
         
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                canvas.dispose();
+            }
+        });
+        
         createStatusBar();
     }
     
@@ -49,13 +129,26 @@ public class NodeBasedImageProcessingUI extends JFrame {
         JMenuItem loadImageItem = new JMenuItem("원본 이미지 로드");
         loadImageItem.addActionListener(this::loadImageAction);
         
+        JMenuItem loadSequenceItem = new JMenuItem("원본 이미지 시퀀스 로드");
+        loadSequenceItem.addActionListener(this::loadSequenceAction);
+        
         JMenuItem saveAllItem = new JMenuItem("모든 결과 저장");
         saveAllItem.addActionListener(this::saveAllAction);
         
+        JMenuItem openGraphItem = new JMenuItem("워크플로우 열기");
+        openGraphItem.addActionListener(this::openGraphAction);
+        
+        JMenuItem saveGraphItem = new JMenuItem("워크플로우 저장");
+        saveGraphItem.addActionListener(this::saveGraphAction);
+        
         JMenuItem exitItem = new JMenuItem("종료");
         exitItem.addActionListener(e -> System.exit(0));
         
         fileMenu.add(loadImageItem);
+        fileMenu.add(loadSequenceItem);
+        fileMenu.addSeparator();
+        fileMenu.add(openGraphItem);
+        fileMenu.add(saveGraphItem);
         fileMenu.addSeparator();
         fileMenu.add(saveAllItem);
         fileMenu.addSeparator();
@@ -123,18 +216,18 @@ public class NodeBasedImageProcessingUI extends JFrame {
                     .findFirst().orElse(null);
                     
                 if (originalNode != null) {
-                    originalNode.getOutputImages().clear();
-                    originalNode.getOutputImageNames().clear();
+                    if (!selectedFile.isFile()) {
+                        throw new IOException("파일이 없습니다: " + selectedFile.getName());
+                    }
                     
-                    BufferedImage loadedImage = ImageIO.read(selectedFile);
-                    originalNode.getOutputImages().add(loadedImage);
-                    originalNode.getOutputImageNames().add(selectedFile.getName());
+                    // 미리보기만 백그라운드에서 줄여 읽고, 다 읽히면 연결된 노드로 전파됨 (imagesLoaded)
+                    originalNode.loadImages(
+                        new String[] { selectedFile.getPath() },
+                        Collections.singletonList(selectedFile.getName()), false);
+                    // 완료/실패 알림도 다 읽힌 뒤에 띄움 (결과는 EDT 에서 반영되므로 지금 붙여도 놓치지 않음)
+                    showLoadResultWhenLoaded(originalNode, selectedFile.getName());
                     
                     canvas.repaint();
-                    
-                    JOptionPane.showMessageDialog(this, 
-                        "이미지가 로드되었습니다: " + selectedFile.getName(),
-                        "로드 완료", JOptionPane.INFORMATION_MESSAGE);
                 }
             } catch (IOException ex) {
                 JOptionPane.showMessageDialog(this,
@@ -144,41 +237,173 @@ public class NodeBasedImageProcessingUI extends JFrame {
         }
     }
     
+    // 이번 로드가 다 읽히면 한 번만 알림 - 그 전에 다시 로드하면 이전 로드는 버려지므로 알림도 뗌
+    private void showLoadResultWhenLoaded(Node node, String fileName) {
+        if (loadResultListener != null) {
+            node.removeNodeListener(loadResultListener);
+        }
+        
+        int generation = node.getOutputLoadGeneration();
+        loadResultListener = new NodeListener() {
+            @Override
+            public void imagesChanged(Node changedNode) {
+            }
+            
+            @Override
+            public void imagesLoaded(Node loadedNode) {
+                loadedNode.removeNodeListener(this);
+                loadResultListener = null;
+                if (loadedNode.getOutputLoadGeneration() != generation) {
+                    return;
+                }
+                
+                List<String> errors = loadedNode.getOutputLoadErrors();
+                if (errors.isEmpty()) {
+                    JOptionPane.showMessageDialog(NodeBasedImageProcessingUI.this,
+                        "이미지가 로드되었습니다: " + fileName,
+                        "로드 완료", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(NodeBasedImageProcessingUI.this,
+                        "이미지 로드 중 오류가 발생했습니다:\n" + String.join("\n", errors),
+                        "오류", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        node.addNodeListener(loadResultListener);
+    }
+    
+    // 폴더 또는 여러 파일을 원본 노드에 차례로 넣어 연결된 노드들로 흘려 보냄
+    private void loadSequenceAction(ActionEvent e) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fileChooser.setMultiSelectionEnabled(true);
+        fileChooser.setFileFilter(new FileNameExtensionFilter("이미지 파일", "jpg", "jpeg", "png", "bmp", "gif"));
+        fileChooser.setDialogTitle("원본 이미지 폴더 또는 파일들 선택");
+        
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            try {
+                File[] selectedFiles = fileChooser.getSelectedFiles();
+                ImageSource source = selectedFiles.length == 1 && selectedFiles[0].isDirectory()
+                    ? ImageSource.fromDirectory(selectedFiles[0].toPath())
+                    : ImageSource.fromFiles(Arrays.asList(selectedFiles));
+                
+                canvas.streamImages(source, stopped -> statusLabel.setText(stopped
+                    ? "원본 이미지 시퀀스 처리가 중지되었습니다"
+                    : "원본 이미지 시퀀스 처리 완료"));
+                statusLabel.setText("원본 이미지 시퀀스 처리 중...");
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this,
+                    "이미지 시퀀스를 여는 중 오류가 발생했습니다:\n" + ex.getMessage(),
+                    "오류", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+    
     private void saveAllAction(ActionEvent e) {
         JFileChooser folderChooser = new JFileChooser();
         folderChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
         folderChooser.setDialogTitle("결과 이미지들을 저장할 폴더를 선택하세요");
         
         if (folderChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            try {
-                File selectedFolder = folderChooser.getSelectedFile();
-                int savedCount = 0;
-                
-                for (Node node : canvas.getNodes()) {
-                    if (node.getOutputImages() != null && !node.getOutputImages().isEmpty()) {
-                        for (int i = 0; i < node.getOutputImages().size(); i++) {
-                            BufferedImage image = node.getOutputImages().get(i);
-                            if (image != null) {
-                                String fileName = i < node.getOutputImageNames().size() 
-                                    ? node.getOutputImageNames().get(i)
-                                    : node.getTitle() + "_output_" + i + ".png";
-                                    
-                                File outputFile = new File(selectedFolder, node.getTitle() + "_" + fileName);
-                                
-                                String format = fileName.toLowerCase().endsWith(".gif") ? "gif" : "png";
-                                ImageIO.write(image, format, outputFile);
-                                savedCount++;
-                            }
-                        }
-                    }
+            File selectedFolder = folderChooser.getSelectedFile();
+            
+            // 지금 그래프 스냅샷의 출력을 저장 - 저장 중에 노드가 다시 계산되어도 섞이지 않음
+            GraphSnapshot graph = canvas.getGraph();
+            List<ResultExporter.Entry> entries = new ArrayList<>();
+            for (Node node : graph.getNodes()) {
+                ImageSet outputs = graph.getOutputs(node);
+                if (outputs.size() > 0) {
+                    entries.addAll(ResultExporter.collect(selectedFolder, node.getTitle(),
+                        outputs.getImages(), outputs.getNames()));
                 }
+            }
+            
+            ProgressMonitor monitor = new ProgressMonitor(this, "결과 이미지 저장 중...", "", 0, entries.size());
+            monitor.setMillisToDecideToPopup(200);
+            AtomicBoolean cancelled = new AtomicBoolean();
+            
+            Thread exportThread = new Thread(() -> {
+                ResultExporter.Summary summary = new ResultExporter().export(selectedFolder, entries,
+                    new ResultExporter.Listener() {
+                        @Override
+                        public void progress(int done, int total) {
+                            SwingUtilities.invokeLater(() -> {
+                                monitor.setNote(done + " / " + total);
+                                monitor.setProgress(done);
+                                if (monitor.isCanceled()) {
+                                    cancelled.set(true);
+                                }
+                            });
+                        }
+                        
+                        @Override
+                        public boolean isCancelled() {
+                            return cancelled.get();
+                        }
+                    });
                 
+                SwingUtilities.invokeLater(() -> {
+                    monitor.close();
+                    showExportSummary(summary, selectedFolder);
+                });
+            }, "result-export");
+            exportThread.setDaemon(true);
+            exportThread.start();
+        }
+    }
+    
+    private void showExportSummary(ResultExporter.Summary summary, File folder) {
+        String message = summary.getSavedCount() + "개의 이미지가 저장되었습니다." +
+            (summary.getSkippedCount() > 0 ? "\n변경되지 않아 건너뛴 이미지: " + summary.getSkippedCount() + "개" : "") +
+            (summary.isCancelled() ? "\n저장이 취소되었습니다." : "") +
+            "\n저장 위치: " + folder.getAbsolutePath();
+        
+        if (summary.getErrors().isEmpty()) {
+            JOptionPane.showMessageDialog(this, message,
+                summary.isCancelled() ? "저장 취소" : "저장 완료", JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(this,
+                message + "\n\n이미지 저장 중 오류가 발생했습니다:\n" + String.join("\n", summary.getErrors()),
+                "오류", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    private void openGraphAction(ActionEvent e) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("워크플로우 파일", GraphDefinition.FILE_EXTENSION));
+        fileChooser.setDialogTitle("워크플로우 열기");
+        
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            try {
+                File selectedFile = fileChooser.getSelectedFile();
+                canvas.applyGraphDefinition(GraphDefinition.load(selectedFile));
+                statusLabel.setText("워크플로우를 불러왔습니다: " + selectedFile.getName());
+            } catch (IOException | IllegalArgumentException ex) {
                 JOptionPane.showMessageDialog(this,
-                    savedCount + "개의 이미지가 저장되었습니다.\n저장 위치: " + selectedFolder.getAbsolutePath(),
-                    "저장 완료", JOptionPane.INFORMATION_MESSAGE);
+                    "워크플로우를 여는 중 오류가 발생했습니다:\n" + ex.getMessage(),
+                    "오류", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+    
+    private void saveGraphAction(ActionEvent e) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("워크플로우 파일", GraphDefinition.FILE_EXTENSION));
+        fileChooser.setDialogTitle("워크플로우 저장");
+        
+        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            try {
+                File selectedFile = fileChooser.getSelectedFile();
+                if (!selectedFile.getName().toLowerCase().endsWith("." + GraphDefinition.FILE_EXTENSION)) {
+                    selectedFile = new File(selectedFile.getParentFile(),
+                        selectedFile.getName() + "." + GraphDefinition.FILE_EXTENSION);
+                }
+                
+                canvas.getGraphDefinition().save(selectedFile);
+                statusLabel.setText("워크플로우를 저장했습니다: " + selectedFile.getName());
             } catch (IOException ex) {
                 JOptionPane.showMessageDialog(this,
-                    "이미지 저장 중 오류가 발생했습니다:\n" + ex.getMessage(),
+                    "워크플로우 저장 중 오류가 발생했습니다:\n" + ex.getMessage(),
                     "오류", JOptionPane.ERROR_MESSAGE);
             }
         }
@@ -214,7 +439,8 @@ public class NodeBasedImageProcessingUI extends JFrame {
             "2. 출력 포트에서 입력 포트로 연결\n" +
             "3. 연결선을 우클릭하여 제거\n" +
             "4. 마우스 휠로 확대/축소\n" +
-            "5. 가운데 버튼으로 캔버스 이동\n\n" +
+            "5. 가운데 버튼으로 캔버스 이동\n" +
+            "6. 처리 중인 노드를 우클릭하여 취소\n\n" +
             "각 단계별로 이미지가 자동 처리됩니다.",
             "정보", JOptionPane.INFORMATION_MESSAGE);
     }
@@ -234,8 +460,8 @@ public class NodeBasedImageProcessingUI extends JFrame {
 
 // ================= NodeCanvas 클래스 =================
 class NodeCanvas extends JPanel {
-    private List<Node> nodes = new ArrayList<>();
-    private List<Connection> connections = new ArrayList<>();
+    // 노드/연결 구성은 EDT 에서 commit 으로만 바꾸고, 다른 스레드는 그 시점의 스냅샷을 잠금 없이 읽음
+    private volatile GraphSnapshot graph = GraphSnapshot.EMPTY;
     private Node draggedNode = null;
     private NodePort connectionStartPort = null;
     private Point lastMousePos = new Point();
@@ -243,20 +469,74 @@ class NodeCanvas extends JPanel {
     private boolean isPanning = false;
     private float zoomLevel = 1.0f;
     private Timer animationTimer;
-    private Set<BufferedImage> animatedImages = new HashSet<>();
+    // 노드 표면에 굽지 않고 매 프레임 따로 그리는 애니메이션 썸네일 (노드 기준 상대 좌표)
+    private Map<Node, List<AnimatedSlot>> animatedSlots = new HashMap<>();
+    private List<AnimatedSlot> surfaceSlots = null;
+    private Point surfaceNodeOrigin = null;
+    private RepaintScheduler repaintScheduler;
+    private Connection hoveredConnection = null;
+    private GraphExecutor graphExecutor = new GraphExecutor(NodeProcessorRegistry.createDefault());
+    // 시퀀스 처리 중에는 노드마다 가장 최근 결과만 들고 있음
+    private volatile StreamingPipeline activeStream = null;
+    private final Map<Node, NodeResult> streamResults = new ConcurrentHashMap<>();
+    private final AtomicBoolean streamApplyScheduled = new AtomicBoolean();
+    
+    // 히트 테스트용 공간 인덱스 (캔버스 좌표)
+    private SpatialGrid<Node> nodeIndex = new SpatialGrid<>(256);
+    private SpatialGrid<NodePort> portIndex = new SpatialGrid<>(64);
+    private SpatialGrid<Connection> connectionIndex = new SpatialGrid<>(128);
+    private AdjacencyIndex adjacency = new AdjacencyIndex();
+    private int nextZOrder = 0;
+    
+    private static final double CONNECTION_HIT_THRESHOLD = 10.0;
+    // 이 배율보다 작으면 노드를 단색 상자로만 그림
+    private static final float LOD_ZOOM_THRESHOLD = 0.35f;
+    // 포트가 노드 좌우로 16px 튀어나옴
+    private static final int NODE_VISUAL_MARGIN = 16;
+    // 노드 표면 캐시 최대 크기 (약 16MB)
+    private static final long MAX_NODE_SURFACE_PIXELS = 4L * 1024 * 1024;
+    
+    // 비동기 로딩 결과 반영 및 하위 노드 갱신
+    private final NodeListener nodeListener = new NodeListener() {
+        @Override
+        public void imagesChanged(Node node) {
+            commit(g -> g.withOutputs(node));
+            animatedSlots.remove(node);
+            updateNodeLayout(node);
+        }
+        
+        @Override
+        public void imagesLoaded(Node node) {
+            propagateChanges(node);
+        }
+    };
     
     public NodeCanvas() {
         initializeComponent();
-        addProcessingNodes();
+        repaintScheduler = new RepaintScheduler(this, 60);
+        ThumbnailCache.getInstance().setLevelListener(this::thumbnailLevelReady);
         setupAnimationTimer();
+        addProcessingNodes();
     }
     
     public List<Node> getNodes() {
-        return nodes;
+        return graph.getNodes();
     }
     
     public List<Connection> getConnections() {
-        return connections;
+        return graph.getConnections();
+    }
+    
+    public GraphSnapshot getGraph() {
+        return graph;
+    }
+    
+    // 그래프를 바꾸는 유일한 경로 - 쓰는 쪽은 EDT 하나뿐이므로 새 스냅샷을 만들어 바꿔 끼우기만 함
+    private void commit(UnaryOperator<GraphSnapshot> change) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            throw new IllegalStateException("그래프는 EDT 에서만 바꿀 수 있습니다");
+        }
+        graph = change.apply(graph);
     }
     
     private void initializeComponent() {
@@ -283,8 +563,7 @@ class NodeCanvas extends JPanel {
             
             @Override
             public void mouseMoved(MouseEvent e) {
-                lastMousePos = e.getPoint();
-                repaint();
+                nodeCanvasMouseMoved(e);
             }
         });
         
@@ -292,37 +571,176 @@ class NodeCanvas extends JPanel {
     }
     
     private void setupAnimationTimer() {
+        // 화면에 보이는 애니메이션 썸네일 영역만 다시 그림 - 보이는 것이 없으면 멈춤
         animationTimer = new Timer(50, e -> {
-            boolean hasAnimatedImages = false;
+            Rectangle visibleRect = getVisibleCanvasRect(null);
+            int minDelay = Integer.MAX_VALUE;
             
-            for (Node node : nodes) {
-                if (node.getInputImages() != null) {
-                    for (BufferedImage image : node.getInputImages()) {
-                        if (image != null && isAnimatedGif(image)) {
-                            hasAnimatedImages = true;
-                        }
+            if (zoomLevel >= LOD_ZOOM_THRESHOLD) {
+                for (Map.Entry<Node, List<AnimatedSlot>> entry : animatedSlots.entrySet()) {
+                    Rectangle nodeRect = nodeIndex.getBounds(entry.getKey());
+                    if (nodeRect == null) {
+                        continue;
                     }
-                }
-                
-                if (node.getOutputImages() != null) {
-                    for (BufferedImage image : node.getOutputImages()) {
-                        if (image != null && isAnimatedGif(image)) {
-                            hasAnimatedImages = true;
+                    
+                    for (AnimatedSlot slot : entry.getValue()) {
+                        Rectangle slotRect = slot.getBounds(nodeRect);
+                        if (slotRect.intersects(visibleRect)) {
+                            markCanvasDirty(slotRect);
+                            minDelay = Math.min(minDelay, slot.getAnimation().getMinDelay());
                         }
                     }
                 }
             }
             
-            if (hasAnimatedImages) {
-                repaint();
+            if (minDelay == Integer.MAX_VALUE) {
+                animationTimer.stop();
+            } else {
+                animationTimer.setDelay(Math.max(20, minDelay));
             }
         });
-        animationTimer.start();
+    }
+    
+    // 캔버스 좌표 영역을 화면 좌표로 바꿔 다시 그리기 예약
+    private void markCanvasDirty(Rectangle canvasRect) {
+        if (canvasRect == null) {
+            return;
+        }
+        
+        int x = (int) Math.floor(canvasRect.x * zoomLevel + canvasOffset.x);
+        int y = (int) Math.floor(canvasRect.y * zoomLevel + canvasOffset.y);
+        int width = (int) Math.ceil(canvasRect.width * zoomLevel);
+        int height = (int) Math.ceil(canvasRect.height * zoomLevel);
+        
+        // 안티앨리어싱 번짐 여유
+        repaintScheduler.markDirty(new Rectangle(x - 2, y - 2, width + 4, height + 4));
+    }
+    
+    // 노드가 실제로 그려지는 영역 (좌우로 튀어나온 포트 포함)
+    private Rectangle getNodeVisualBounds(Node node) {
+        Rectangle nodeRect = nodeIndex.getBounds(node);
+        return nodeRect != null ? getNodeVisualBounds(nodeRect) : null;
+    }
+    
+    private Rectangle getNodeVisualBounds(Rectangle nodeRect) {
+        Rectangle visualRect = new Rectangle(nodeRect);
+        visualRect.grow(NODE_VISUAL_MARGIN, NODE_VISUAL_MARGIN);
+        return visualRect;
+    }
+    
+    private Rectangle getConnectionVisualBounds(Connection connection) {
+        if (connection.getBounds() == null) {
+            return null;
+        }
+        
+        // 강조 시 선 두께 4
+        Rectangle visualRect = new Rectangle(connection.getBounds());
+        visualRect.grow(4, 4);
+        return visualRect;
+    }
+    
+    private Rectangle getTempConnectionBounds(Point mousePos) {
+        Point startPos = getPortCenter(connectionStartPort);
+        Point endPos = new Point(
+            (int)((mousePos.x - canvasOffset.x) / zoomLevel),
+            (int)((mousePos.y - canvasOffset.y) / zoomLevel)
+        );
+        
+        Rectangle bounds = Connection.createCurve(startPos, endPos).getBounds();
+        bounds.grow(2, 2);
+        return bounds;
+    }
+    
+    // 마우스 아래 연결선이 바뀐 경우에만 이전/현재 연결선 영역을 다시 그림
+    private void updateHoveredConnection() {
+        Connection hovered = getConnectionAtPosition(lastMousePos);
+        if (hovered == hoveredConnection) {
+            return;
+        }
+        
+        if (hoveredConnection != null) {
+            markCanvasDirty(getConnectionVisualBounds(hoveredConnection));
+        }
+        if (hovered != null) {
+            markCanvasDirty(getConnectionVisualBounds(hovered));
+        }
+        hoveredConnection = hovered;
+    }
+    
+    private void addNode(Node node) {
+        node.addNodeListener(nodeListener);
+        node.setZOrder(++nextZOrder);
+        commit(g -> g.withNode(node));
+        updateNodeLayout(node);
+    }
+    
+    // 노드 크기/포트 위치를 다시 계산하고 인덱스를 갱신 (이미지 변경, 드래그 시)
+    private void updateNodeLayout(Node node) {
+        Rectangle oldRect = nodeIndex.getBounds(node);
+        if (oldRect != null) {
+            markCanvasDirty(getNodeVisualBounds(oldRect));
+        }
+        
+        Rectangle nodeRect = new Rectangle(node.getPosition().x, node.getPosition().y,
+            getNodeWidth(node), getNodeHeight(node));
+        nodeIndex.put(node, nodeRect);
+        markCanvasDirty(getNodeVisualBounds(nodeRect));
+        
+        int portY = nodeRect.y + nodeRect.height - 30;
+        for (NodePort port : node.getInputPorts()) {
+            Rectangle portRect = new Rectangle(nodeRect.x - 16, portY - 8, 16, 16);
+            port.setBounds(portRect);
+            portIndex.put(port, portRect);
+        }
+        for (NodePort port : node.getOutputPorts()) {
+            Rectangle portRect = new Rectangle(nodeRect.x + nodeRect.width - 16, portY - 8, 16, 16);
+            port.setBounds(portRect);
+            portIndex.put(port, portRect);
+        }
+        
+        for (Connection connection : adjacency.getOutgoing(node)) {
+            updateConnectionLayout(connection);
+        }
+        for (Connection connection : adjacency.getIncoming(node)) {
+            updateConnectionLayout(connection);
+        }
+    }
+    
+    private void updateConnectionLayout(Connection connection) {
+        markCanvasDirty(getConnectionVisualBounds(connection));
+        connection.updateGeometry(getPortCenter(connection.getOutputPort()), getPortCenter(connection.getInputPort()));
+        markCanvasDirty(getConnectionVisualBounds(connection));
+        
+        Rectangle hitBounds = new Rectangle(connection.getBounds());
+        int margin = (int) Math.ceil(CONNECTION_HIT_THRESHOLD);
+        hitBounds.grow(margin, margin);
+        connectionIndex.put(connection, hitBounds);
+    }
+    
+    private void addConnection(Connection connection) {
+        commit(g -> g.withConnection(connection));
+        adjacency.add(connection);
+        updateConnectionLayout(connection);
+    }
+    
+    private void removeConnectionFromIndex(Connection connection) {
+        connectionIndex.remove(connection);
+        markCanvasDirty(getConnectionVisualBounds(connection));
+        if (connection == hoveredConnection) {
+            hoveredConnection = null;
+        }
+        adjacency.remove(connection);
+    }
+    
+    private void clearConnections() {
+        hoveredConnection = null;
+        commit(GraphSnapshot::withoutConnections);
+        connectionIndex.clear();
+        adjacency.clear();
     }
     
     private boolean isAnimatedGif(BufferedImage image) {
-        // Java에서 GIF 애니메이션 감지는 복잡하므로 단순화
-        return false;
+        return AnimatedImage.of(image) != null;
     }
     
     private void addProcessingNodes() {
@@ -330,37 +748,37 @@ class NodeCanvas extends JPanel {
         Node originalNode = new Node("원본이미지", new Point(50, 30), NodeType.ORIGINAL);
         originalNode.getOutputPorts().add(new NodePort("Output", PortType.OUTPUT, originalNode));
         originalNode.loadImages(new String[]{"images/input.png"}, false);
-        nodes.add(originalNode);
+        addNode(originalNode);
         
         // Step01 노드
         Node step01Node = new Node("Step01", new Point(300, 30), NodeType.STEP01);
         step01Node.getInputPorts().add(new NodePort("Input", PortType.INPUT, step01Node));
         step01Node.getOutputPorts().add(new NodePort("Output", PortType.OUTPUT, step01Node));
-        nodes.add(step01Node);
+        addNode(step01Node);
         
         // Step02 노드
         Node step02Node = new Node("Step02", new Point(600, 30), NodeType.STEP02);
         step02Node.getInputPorts().add(new NodePort("Input", PortType.INPUT, step02Node));
         step02Node.getOutputPorts().add(new NodePort("Output", PortType.OUTPUT, step02Node));
-        nodes.add(step02Node);
+        addNode(step02Node);
         
         // Step03 노드
         Node step03Node = new Node("Step03", new Point(300, 330), NodeType.STEP03);
         step03Node.getInputPorts().add(new NodePort("Input", PortType.INPUT, step03Node));
         step03Node.getOutputPorts().add(new NodePort("Output", PortType.OUTPUT, step03Node));
-        nodes.add(step03Node);
+        addNode(step03Node);
         
         // Step04 노드
         Node step04Node = new Node("Step04", new Point(600, 330), NodeType.STEP04);
         step04Node.getInputPorts().add(new NodePort("Input", PortType.INPUT, step04Node));
         step04Node.getOutputPorts().add(new NodePort("Output", PortType.OUTPUT, step04Node));
-        nodes.add(step04Node);
+        addNode(step04Node);
         
         // Step05 노드
         Node step05Node = new Node("Step05", new Point(900, 330), NodeType.STEP05);
         step05Node.getInputPorts().add(new NodePort("Input", PortType.INPUT, step05Node));
         step05Node.getOutputPorts().add(new NodePort("Output", PortType.OUTPUT, step05Node));
-        nodes.add(step05Node);
+        addNode(step05Node);
     }
     
     private void nodeCanvasMousePressed(MouseEvent e) {
@@ -386,6 +804,14 @@ class NodeCanvas extends JPanel {
                 repaint();
                 return;
             }
+            
+            // 처리 중인 노드 취소
+            Node clickedNode = getNodeAtPosition(e.getPoint());
+            if (clickedNode != null && clickedNode.isProcessing()) {
+                clickedNode.cancelProcessing();
+                markCanvasDirty(getNodeVisualBounds(clickedNode));
+                return;
+            }
         }
         
         // 포트 클릭 확인
@@ -396,7 +822,7 @@ class NodeCanvas extends JPanel {
             } else {
                 // 연결 생성
                 if (canConnect(connectionStartPort, clickedPort)) {
-                    connections.add(new Connection(connectionStartPort, clickedPort));
+                    addConnection(new Connection(connectionStartPort, clickedPort));
                     processImageFlow(connectionStartPort, clickedPort);
                 }
                 connectionStartPort = null;
@@ -409,29 +835,33 @@ class NodeCanvas extends JPanel {
         if (SwingUtilities.isLeftMouseButton(e)) {
             draggedNode = getNodeAtPosition(e.getPoint());
             if (draggedNode != null) {
-                nodes.remove(draggedNode);
-                nodes.add(draggedNode);
+                // 그리는 순서는 zOrder 로만 정함 - 노드 목록 순서는 워크플로우 파일의 노드 번호
+                draggedNode.setZOrder(++nextZOrder);
+                markCanvasDirty(getNodeVisualBounds(draggedNode));
             }
         }
     }
     
+    // 드래그/이동 모두 여기서 처리 - 바뀐 영역만 다시 그리기 예약
     private void nodeCanvasMouseMoved(MouseEvent e) {
         if (isPanning) {
             canvasOffset.x += e.getX() - lastMousePos.x;
             canvasOffset.y += e.getY() - lastMousePos.y;
-            repaint();
+            repaintScheduler.markAllDirty();
         } else if (draggedNode != null) {
             Point newPos = new Point(
                 draggedNode.getPosition().x + e.getX() - lastMousePos.x,
                 draggedNode.getPosition().y + e.getY() - lastMousePos.y
             );
             draggedNode.setPosition(newPos);
-            repaint();
+            updateNodeLayout(draggedNode);
         } else if (connectionStartPort != null) {
-            repaint();
+            markCanvasDirty(getTempConnectionBounds(lastMousePos));
+            markCanvasDirty(getTempConnectionBounds(e.getPoint()));
         }
         
         lastMousePos = e.getPoint();
+        updateHoveredConnection();
     }
     
     private void nodeCanvasMouseReleased(MouseEvent e) {
@@ -445,7 +875,7 @@ class NodeCanvas extends JPanel {
         zoomLevel = Math.max(0.1f, Math.min(3.0f, zoomLevel));
         
         if (oldZoom != zoomLevel) {
-            repaint();
+            repaintScheduler.markAllDirty();
         }
     }
     
@@ -460,9 +890,12 @@ class NodeCanvas extends JPanel {
         
         drawGrid(g2d);
         
+        // 화면에 보이는 영역 (캔버스 좌표) 밖의 항목은 그리지 않음
+        Rectangle visibleRect = getVisibleCanvasRect(g.getClipBounds());
+        
         // 연결선 그리기
-        for (Connection connection : connections) {
-            drawConnection(g2d, connection);
+        for (Connection connection : connectionIndex.query(visibleRect)) {
+            drawConnection(g2d, connection, connection == hoveredConnection);
         }
         
         // 임시 연결선 그리기
@@ -470,14 +903,55 @@ class NodeCanvas extends JPanel {
             drawTempConnection(g2d, connectionStartPort, lastMousePos);
         }
         
-        // 노드 그리기
-        for (Node node : nodes) {
-            drawNode(g2d, node);
+        // 노드 그리기 (포트가 노드 밖으로 튀어나오므로 여유를 둠)
+        Rectangle nodeQueryRect = new Rectangle(visibleRect);
+        nodeQueryRect.grow(16, 16);
+        List<Node> visibleNodes = new ArrayList<>(nodeIndex.query(nodeQueryRect));
+        visibleNodes.sort(Comparator.comparingInt(Node::getZOrder));
+        
+        boolean simplified = zoomLevel < LOD_ZOOM_THRESHOLD;
+        for (Node node : visibleNodes) {
+            if (simplified) {
+                drawSimplifiedNode(g2d, node);
+            } else {
+                drawNode(g2d, node);
+            }
         }
         
         g2d.dispose();
     }
     
+    private Rectangle getVisibleCanvasRect(Rectangle clip) {
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        
+        int x = (int) Math.floor((clip.x - canvasOffset.x) / zoomLevel);
+        int y = (int) Math.floor((clip.y - canvasOffset.y) / zoomLevel);
+        int width = (int) Math.ceil(clip.width / zoomLevel) + 1;
+        int height = (int) Math.ceil(clip.height / zoomLevel) + 1;
+        return new Rectangle(x, y, width, height);
+    }
+    
+    // 축소 상태에서는 썸네일/글자 없이 색 상자와 포트만 표시
+    private void drawSimplifiedNode(Graphics2D g2d, Node node) {
+        Rectangle nodeRect = nodeIndex.getBounds(node);
+        
+        g2d.setColor(getNodeColor(node.getType()));
+        g2d.fillRect(nodeRect.x, nodeRect.y, nodeRect.width, nodeRect.height);
+        
+        for (NodePort port : node.getInputPorts()) {
+            g2d.setColor(Color.CYAN);
+            Rectangle portRect = port.getBounds();
+            g2d.fillRect(portRect.x, portRect.y, portRect.width, portRect.height);
+        }
+        for (NodePort port : node.getOutputPorts()) {
+            g2d.setColor(Color.ORANGE);
+            Rectangle portRect = port.getBounds();
+            g2d.fillRect(portRect.x, portRect.y, portRect.width, portRect.height);
+        }
+    }
+    
     private void drawGrid(Graphics2D g2d) {
         g2d.setColor(new Color(60, 60, 63));
         g2d.setStroke(new BasicStroke(1));
@@ -495,11 +969,100 @@ class NodeCanvas extends JPanel {
         }
     }
     
+    // 노드는 배율 단계별로 한 번만 오프스크린 표면에 그려 두고 매 프레임에는 복사만 함
     private void drawNode(Graphics2D g2d, Node node) {
-        int nodeWidth = getNodeWidth(node);
-        int nodeHeight = getNodeHeight(node);
-        Rectangle nodeRect = new Rectangle(node.getPosition().x, node.getPosition().y, nodeWidth, nodeHeight);
+        Rectangle nodeRect = nodeIndex.getBounds(node);
+        Rectangle visualRect = getNodeVisualBounds(nodeRect);
+        double scale = ThumbnailCache.getZoomBucket(g2d.getTransform().getScaleX());
+        
+        BufferedImage surface = node.getRenderCache(scale);
+        if (surface == null) {
+            surface = createNodeSurface(g2d.getDeviceConfiguration(), node, nodeRect, scale);
+            node.setRenderCache(surface, scale);
+        }
+        
+        if (surface == null) {
+            // 너무 큰 노드는 캐시하지 않고 바로 그림
+            Shape oldClip = g2d.getClip();
+            g2d.clip(visualRect);
+            renderNode(g2d, node, nodeRect);
+            g2d.setClip(oldClip);
+            drawNodeProgress(g2d, node, nodeRect);
+            return;
+        }
+        
+        Object oldHint = g2d.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(surface, visualRect.x, visualRect.y, visualRect.width, visualRect.height, null);
+        if (oldHint != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldHint);
+        }
+        
+        // 표면에서 비워 둔 애니메이션 썸네일은 현재 프레임으로 그림
+        List<AnimatedSlot> slots = animatedSlots.get(node);
+        if (slots != null) {
+            for (AnimatedSlot slot : slots) {
+                Rectangle slotRect = slot.getBounds(nodeRect);
+                drawThumbnail(g2d, slot.getAnimation().getPoster(), slotRect.x, slotRect.y, slotRect.width, slotRect.height);
+            }
+        }
+        
+        drawNodeProgress(g2d, node, nodeRect);
+    }
+    
+    // 처리 중인 노드 아래쪽 진행 막대 - 자주 바뀌므로 표면 캐시에 넣지 않음
+    private void drawNodeProgress(Graphics2D g2d, Node node, Rectangle nodeRect) {
+        double progress = node.getProgress();
+        if (progress < 0) {
+            return;
+        }
+        
+        int barX = nodeRect.x + 10;
+        int barY = nodeRect.y + nodeRect.height - 12;
+        int barWidth = nodeRect.width - 20;
         
+        g2d.setColor(new Color(0, 0, 0, 120));
+        g2d.fillRect(barX, barY, barWidth, 6);
+        g2d.setColor(Color.CYAN);
+        g2d.fillRect(barX, barY, (int) Math.round(barWidth * Math.min(1.0, progress)), 6);
+        g2d.setColor(Color.WHITE);
+        g2d.drawRect(barX, barY, barWidth, 6);
+    }
+    
+    private BufferedImage createNodeSurface(GraphicsConfiguration config, Node node, Rectangle nodeRect, double scale) {
+        Rectangle visualRect = getNodeVisualBounds(nodeRect);
+        int width = (int) Math.ceil(visualRect.width * scale);
+        int height = (int) Math.ceil(visualRect.height * scale);
+        
+        if ((long) width * height > MAX_NODE_SURFACE_PIXELS) {
+            return null;
+        }
+        
+        BufferedImage surface = config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        Graphics2D g2d = surface.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.scale(scale, scale);
+        g2d.translate(-visualRect.x, -visualRect.y);
+        
+        surfaceSlots = new ArrayList<>();
+        surfaceNodeOrigin = nodeRect.getLocation();
+        try {
+            renderNode(g2d, node, nodeRect);
+        } finally {
+            if (surfaceSlots.isEmpty()) {
+                animatedSlots.remove(node);
+            } else {
+                animatedSlots.put(node, surfaceSlots);
+            }
+            surfaceSlots = null;
+            surfaceNodeOrigin = null;
+        }
+        
+        g2d.dispose();
+        return surface;
+    }
+    
+    private void renderNode(Graphics2D g2d, Node node, Rectangle nodeRect) {
         Color nodeColor = getNodeColor(node.getType());
         Color darkerColor = new Color(
             Math.max(0, nodeColor.getRed() - 20),
@@ -554,7 +1117,7 @@ class NodeCanvas extends JPanel {
                 int y = imageY + row * inputRowHeight;
                 
                 if (node.getInputImages().get(i) != null) {
-                    g2d.drawImage(node.getInputImages().get(i), x, y, imageSize, imageSize, null);
+                    drawThumbnail(g2d, node.getInputImages().get(i), x, y, imageSize, imageSize);
                     
                     if (i < node.getInputImageNames().size()) {
                         String imageName = node.getInputImageNames().get(i);
@@ -598,14 +1161,14 @@ class NodeCanvas extends JPanel {
                         node.getOutputImageNames().get(i).toLowerCase().endsWith(".gif")) {
                         
                         int gifSize = imageSize * 2;
-                        g2d.drawImage(node.getOutputImages().get(i), x, y, gifSize, gifSize, null);
+                        drawThumbnail(g2d, node.getOutputImages().get(i), x, y, gifSize, gifSize);
                         
                         g2d.setFont(new Font("SansSerif", Font.BOLD, 8));
                         g2d.setColor(Color.YELLOW);
                         String displayName = getFileNameWithoutExtension(node.getOutputImageNames().get(i));
                         g2d.drawString(displayName, x, y + gifSize + 15);
                     } else {
-                        g2d.drawImage(node.getOutputImages().get(i), x, y, imageSize, imageSize, null);
+                        drawThumbnail(g2d, node.getOutputImages().get(i), x, y, imageSize, imageSize);
                         
                         if (i < node.getOutputImageNames().size()) {
                             String imageName = node.getOutputImageNames().get(i);
@@ -627,6 +1190,43 @@ class NodeCanvas extends JPanel {
         }
     }
     
+    // 더 알맞은 밉맵 단계가 만들어지면 그 이미지를 가진 노드의 표면을 다시 그림
+    private void thumbnailLevelReady(BufferedImage source) {
+        for (Node node : graph.getNodes()) {
+            if (node.getInputImages().contains(source) || node.getOutputImages().contains(source)) {
+                node.invalidateRenderCache();
+            }
+        }
+        repaintScheduler.markAllDirty();
+    }
+    
+    // 현재 배율에서 화면 크기에 가장 가까운 밉맵 단계를 골라 그림
+    private void drawThumbnail(Graphics2D g2d, BufferedImage image, int x, int y, int width, int height) {
+        AnimatedImage animation = AnimatedImage.of(image);
+        if (animation != null) {
+            if (surfaceSlots != null) {
+                // 노드 표면을 그리는 중이면 자리만 기록하고 비워 둠
+                surfaceSlots.add(new AnimatedSlot(animation, new Rectangle(x, y, width, height), surfaceNodeOrigin));
+                return;
+            }
+            
+            image = animation.getFrame(System.currentTimeMillis());
+            if (!animationTimer.isRunning()) {
+                animationTimer.start();
+            }
+        }
+        
+        double scale = g2d.getTransform().getScaleX();
+        BufferedImage thumbnail = ThumbnailCache.getInstance().getThumbnail(image, width, height, scale);
+        
+        Object oldHint = g2d.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(thumbnail, x, y, width, height, null);
+        if (oldHint != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldHint);
+        }
+    }
+    
     private String getFileNameWithoutExtension(String fileName) {
         int dotIndex = fileName.lastIndexOf('.');
         if (dotIndex > 0) {
@@ -664,7 +1264,6 @@ class NodeCanvas extends JPanel {
     
     private void drawPort(Graphics2D g2d, NodePort port, Point position) {
         Rectangle portRect = new Rectangle(position.x - 8, position.y - 8, 16, 16);
-        port.setBounds(portRect);
         
         Color portColor = port.getType() == PortType.INPUT ? Color.CYAN : Color.ORANGE;
         
@@ -676,15 +1275,13 @@ class NodeCanvas extends JPanel {
         g2d.drawOval(portRect.x, portRect.y, portRect.width, portRect.height);
     }
     
-    private void drawConnection(Graphics2D g2d, Connection connection) {
-        Point startPos = getPortCenter(connection.getOutputPort());
-        Point endPos = getPortCenter(connection.getInputPort());
-        
-        boolean isHighlighted = isConnectionNearMouse(connection, lastMousePos);
+    private void drawConnection(Graphics2D g2d, Connection connection, boolean isHighlighted) {
         Color connectionColor = isHighlighted ? Color.RED : Color.YELLOW;
         int lineWidth = isHighlighted ? 4 : 3;
         
-        drawBezierConnection(g2d, startPos, endPos, connectionColor, lineWidth);
+        g2d.setColor(connectionColor);
+        g2d.setStroke(new BasicStroke(lineWidth));
+        g2d.draw(connection.getCurve());
     }
     
     private void drawTempConnection(Graphics2D g2d, NodePort startPort, Point mousePos) {
@@ -700,19 +1297,7 @@ class NodeCanvas extends JPanel {
     private void drawBezierConnection(Graphics2D g2d, Point start, Point end, Color color, int lineWidth) {
         g2d.setColor(color);
         g2d.setStroke(new BasicStroke(lineWidth));
-        
-        int controlOffset = Math.abs(end.x - start.x) / 2;
-        Point control1 = new Point(start.x + controlOffset, start.y);
-        Point control2 = new Point(end.x - controlOffset, end.y);
-        
-        CubicCurve2D curve = new CubicCurve2D.Float(
-            start.x, start.y,
-            control1.x, control1.y,
-            control2.x, control2.y,
-            end.x, end.y
-        );
-        
-        g2d.draw(curve);
+        g2d.draw(Connection.createCurve(start, end));
     }
     
     private Point getPortCenter(NodePort port) {
@@ -801,16 +1386,14 @@ class NodeCanvas extends JPanel {
             (int)((position.y - canvasOffset.y) / zoomLevel)
         );
         
-        for (int i = nodes.size() - 1; i >= 0; i--) {
-            Node node = nodes.get(i);
-            int nodeWidth = getNodeWidth(node);
-            int nodeHeight = getNodeHeight(node);
-            Rectangle nodeRect = new Rectangle(node.getPosition().x, node.getPosition().y, nodeWidth, nodeHeight);
-            if (nodeRect.contains(adjustedPos)) {
-                return node;
+        // 겹친 노드 중 가장 위에 있는 노드
+        Node topNode = null;
+        for (Node node : nodeIndex.query(adjustedPos)) {
+            if (topNode == null || node.getZOrder() > topNode.getZOrder()) {
+                topNode = node;
             }
         }
-        return null;
+        return topNode;
     }
     
     private NodePort getPortAtPosition(Point position) {
@@ -819,19 +1402,13 @@ class NodeCanvas extends JPanel {
             (int)((position.y - canvasOffset.y) / zoomLevel)
         );
         
-        for (Node node : nodes) {
-            for (NodePort port : node.getInputPorts()) {
-                if (port.getBounds() != null && port.getBounds().contains(adjustedPos)) {
-                    return port;
-                }
-            }
-            for (NodePort port : node.getOutputPorts()) {
-                if (port.getBounds() != null && port.getBounds().contains(adjustedPos)) {
-                    return port;
-                }
+        NodePort topPort = null;
+        for (NodePort port : portIndex.query(adjustedPos)) {
+            if (topPort == null || port.getParentNode().getZOrder() > topPort.getParentNode().getZOrder()) {
+                topPort = port;
             }
         }
-        return null;
+        return topPort;
     }
     
     private Connection getConnectionAtPosition(Point position) {
@@ -840,7 +1417,7 @@ class NodeCanvas extends JPanel {
             (int)((position.y - canvasOffset.y) / zoomLevel)
         );
         
-        for (Connection connection : connections) {
+        for (Connection connection : connectionIndex.query(adjustedPos)) {
             if (isPointOnConnection(connection, adjustedPos)) {
                 return connection;
             }
@@ -849,260 +1426,262 @@ class NodeCanvas extends JPanel {
     }
     
     private boolean isPointOnConnection(Connection connection, Point point) {
-        Point startPos = getPortCenter(connection.getOutputPort());
-        Point endPos = getPortCenter(connection.getInputPort());
-        
-        int controlOffset = Math.abs(endPos.x - startPos.x) / 2;
-        Point control1 = new Point(startPos.x + controlOffset, startPos.y);
-        Point control2 = new Point(endPos.x - controlOffset, endPos.y);
-        
-        final int segments = 20;
-        final double threshold = 10.0;
+        return connection.isNear(point.x, point.y, CONNECTION_HIT_THRESHOLD);
+    }
+    
+    private boolean canConnect(NodePort port1, NodePort port2) {
+        if (port1.getType() == port2.getType()) {
+            return false;
+        }
         
-        for (int i = 0; i <= segments; i++) {
-            double t = (double)i / segments;
-            Point bezierPoint = calculateBezierPoint(startPos, control1, control2, endPos, t);
-            
-            double distance = Math.sqrt(Math.pow(point.x - bezierPoint.x, 2) + Math.pow(point.y - bezierPoint.y, 2));
-            if (distance <= threshold) {
-                return true;
-            }
+        NodePort outputPort = port1.getType() == PortType.OUTPUT ? port1 : port2;
+        NodePort inputPort = outputPort == port1 ? port2 : port1;
+        if (adjacency.find(outputPort, inputPort) != null) {
+            return false;
         }
         
-        return false;
+        // 순환이 생기면 위상 순서에서 빠져 계산되지 않으므로 막음
+        return !adjacency.wouldCreateCycle(outputPort.getParentNode(), inputPort.getParentNode());
     }
     
-    private boolean isConnectionNearMouse(Connection connection, Point mousePos) {
-        Point adjustedPos = new Point(
-            (int)((mousePos.x - canvasOffset.x) / zoomLevel),
-            (int)((mousePos.y - canvasOffset.y) / zoomLevel)
-        );
-        
-        return isPointOnConnection(connection, adjustedPos);
-    }
-    
-    private Point calculateBezierPoint(Point p0, Point p1, Point p2, Point p3, double t) {
-        double u = 1 - t;
-        double tt = t * t;
-        double uu = u * u;
-        double uuu = uu * u;
-        double ttt = tt * t;
-        
-        double x = uuu * p0.x + 3 * uu * t * p1.x + 3 * u * tt * p2.x + ttt * p3.x;
-        double y = uuu * p0.y + 3 * uu * t * p1.y + 3 * u * tt * p2.y + ttt * p3.y;
+    private void processImageFlow(NodePort outputPort, NodePort inputPort) {
+        NodePort toPort = outputPort.getType() == PortType.INPUT ? outputPort : inputPort;
+        Node toNode = toPort.getParentNode();
         
-        return new Point((int)x, (int)y);
+        runGraphFrom(Collections.singleton(toNode));
     }
     
-    private boolean canConnect(NodePort port1, NodePort port2) {
-        if (port1.getType() == port2.getType()) {
-            return false;
+    // 노드의 출력이 바뀌면 연결된 하위 노드들만 다시 계산 - 입력이 그대로인 노드는 이전 결과를 재사용
+    public void propagateChanges(Node node) {
+        Set<Node> children = new LinkedHashSet<>();
+        for (Connection connection : adjacency.getOutgoing(node)) {
+            children.add(connection.getInputPort().getParentNode());
         }
         
-        for (Connection connection : connections) {
-            if ((connection.getOutputPort() == port1 && connection.getInputPort() == port2) ||
-                (connection.getOutputPort() == port2 && connection.getInputPort() == port1)) {
-                return false;
-            }
+        if (!children.isEmpty()) {
+            runGraphFrom(children);
         }
-        
-        return true;
     }
     
-    private void processImageFlow(NodePort outputPort, NodePort inputPort) {
-        NodePort fromPort = outputPort.getType() == PortType.OUTPUT ? outputPort : inputPort;
-        NodePort toPort = outputPort.getType() == PortType.INPUT ? outputPort : inputPort;
+    // 시작 노드와 그 하위 노드들을 백그라운드에서 위상 순서로 다시 계산
+    private void runGraphFrom(Collection<Node> startNodes) {
+        Map<Node, Integer> tokens = new ConcurrentHashMap<>();
+        // 먼저 나온 출력을 받기 시작한 노드 (EDT 전용)
+        Set<Node> streamingNodes = new HashSet<>();
         
-        Node fromNode = fromPort.getParentNode();
-        Node toNode = toPort.getParentNode();
-        
-        processSpecificNodeConnection(fromNode, toNode);
-        repaint();
-    }
-    
-    private void processSpecificNodeConnection(Node fromNode, Node toNode) {
-        switch (toNode.getType()) {
-            case STEP01:
-                if (fromNode.getType() == NodeType.ORIGINAL) {
-                    toNode.setInputImages(fromNode.getOutputImages(), fromNode.getOutputImageNames());
-                    toNode.loadImages(new String[] {
-                        "images/debug_full_mask.png",
-                        "images/background.png", 
-                        "images/output_no_bg.png"
-                    }, false);
-                }
-                break;
-                
-            case STEP02:
-                if (fromNode.getType() == NodeType.STEP01) {
-                    List<BufferedImage> selectedImages = new ArrayList<>();
-                    List<String> selectedNames = new ArrayList<>();
-                    
-                    if (fromNode.getOutputImages().size() >= 2) {
-                        selectedImages.add(fromNode.getOutputImages().get(0));
-                        selectedImages.add(fromNode.getOutputImages().get(1));
-                        selectedNames.add("images/debug_full_mask.png");
-                        selectedNames.add("images/background.png");
+        graphExecutor.execute(graph, startNodes, new GraphExecutionListener() {
+            @Override
+            public void nodeScheduled(Node node) {
+                tokens.put(node, node.beginProcessing());
+            }
+            
+            @Override
+            public void nodeProgress(Node node, double fraction) {
+                SwingUtilities.invokeLater(() -> {
+                    if (node.isCurrentProcessing(tokens.get(node))) {
+                        node.setProgress(fraction);
+                        markCanvasDirty(getNodeVisualBounds(node));
                     }
-                    
-                    toNode.setInputImages(selectedImages, selectedNames);
-                    toNode.loadImages(new String[] { "images/lama_output.png" }, false);
-                }
-                break;
-                
-            case STEP03:
-                if (fromNode.getType() == NodeType.ORIGINAL) {
-                    List<BufferedImage> combinedImages = new ArrayList<>(fromNode.getOutputImages());
-                    List<String> combinedNames = new ArrayList<>(fromNode.getOutputImageNames());
-                    
-                    // emoji_rabbit.png 이미지 로드
-                    BufferedImage emojiImage = loadEmojiImage();
-                    combinedImages.add(emojiImage);
-                    combinedNames.add("emoji_rabbit.png");
-                    
-                    toNode.setInputImages(combinedImages, combinedNames);
-                    toNode.loadImages(new String[] { "images/output.png" }, false);
-                }
-                break;
-                
-            case STEP04:
-                if (fromNode.getType() == NodeType.STEP01) {
-                    List<BufferedImage> selectedImages = new ArrayList<>();
-                    List<String> selectedNames = new ArrayList<>();
-                    
-                    if (fromNode.getOutputImages().size() >= 3) {
-                        selectedImages.add(fromNode.getOutputImages().get(2));
-                        selectedNames.add("images/output_no_bg.png");
+                });
+            }
+            
+            @Override
+            public void nodeOutput(Node node, BufferedImage image, String name) {
+                SwingUtilities.invokeLater(() -> {
+                    if (!node.isCurrentProcessing(tokens.get(node))) {
+                        return;
                     }
                     
-                    toNode.setInputImages(selectedImages, selectedNames);
-                    
-                    String[] step04Outputs = new String[] {
-                        "images/360_view_001_000deg_from_000deg.png",
-                        "images/360_view_002_045deg_from_060deg.png",
-                        "images/360_view_003_090deg_from_090deg.png",
-                        "images/360_view_004_135deg_from_090deg.png",
-                        "images/360_view_005_180deg_from_180deg.png",
-                        "images/360_view_006_225deg_from_240deg.png",
-                        "images/360_view_007_270deg_from_270deg.png",
-                        "images/360_view_008_315deg_from_000deg.png",
-                        "images/ultrafast_360.gif"
-                    };
-                    
-                    toNode.loadImages(step04Outputs, false);
-                }
-                break;
-                
-            case STEP05:
-                if (fromNode.getType() == NodeType.STEP04) {
-                    List<BufferedImage> selectedImages = new ArrayList<>();
-                    List<String> selectedNames = new ArrayList<>();
-                    
-                    if (fromNode.getOutputImages().size() >= 8) {
-                        for (int i = 0; i < 8; i++) {
-                            selectedImages.add(fromNode.getOutputImages().get(i));
-                            selectedNames.add(fromNode.getOutputImageNames().get(i));
-                        }
+                    // 첫 출력이 오면 이전 결과를 지우고 하나씩 덧붙임
+                    if (streamingNodes.add(node)) {
+                        node.setOutputImages(Collections.singletonList(image), Collections.singletonList(name));
+                    } else {
+                        node.appendOutputImage(image, name);
                     }
-                    
-                    toNode.setInputImages(selectedImages, selectedNames);
-                    toNode.loadImages(new String[] { "images/step05_sc_2025-08-11.gif" }, false);
+                });
+            }
+            
+            @Override
+            public boolean isCancelled(Node node) {
+                Integer token = tokens.get(node);
+                return token == null || !node.isCurrentProcessing(token);
+            }
+            
+            @Override
+            public void nodeCompleted(Node node, NodeResult result) {
+                SwingUtilities.invokeLater(() -> {
+                    int token = tokens.get(node);
+                    if (node.isCurrentProcessing(token) && !result.isShownBy(node)) {
+                        node.setInputImages(result.getInputs().getImages(), result.getInputs().getNames());
+                        node.setOutputImages(result.getOutputs().getImages(), result.getOutputs().getNames());
+                    }
+                    finishProcessing(node, token);
+                });
+            }
+            
+            @Override
+            public void nodeFailed(Node node, Throwable error) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (!(cause instanceof CancellationException)) {
+                    System.err.println("노드 처리 실패: " + node.getTitle() + " - " + cause.getMessage());
                 }
-                break;
+                SwingUtilities.invokeLater(() -> finishProcessing(node, tokens.get(node)));
+            }
+        });
+    }
+    
+    private void finishProcessing(Node node, int token) {
+        node.endProcessing(token);
+        markCanvasDirty(getNodeVisualBounds(node));
+    }
+    
+    private void removeConnection(Connection connection) {
+        if (adjacency.contains(connection)) {
+            commit(g -> g.withoutConnection(connection));
+            removeConnectionFromIndex(connection);
+            resetNodeAfterDisconnection(connection.getInputPort().getParentNode());
         }
     }
     
-    private BufferedImage loadEmojiImage() {
-        String emojiPath = "images/emoji_rabbit.png";
+    private void resetNodeAfterDisconnection(Node node) {
+        node.clearInputImages();
         
-        try {
-            File emojiFile = new File(emojiPath);
-            if (emojiFile.exists()) {
-                return ImageIO.read(emojiFile);
-            } else {
-                // 상대 경로로도 시도
-                emojiFile = new File(System.getProperty("user.dir"), emojiPath);
-                if (emojiFile.exists()) {
-                    return ImageIO.read(emojiFile);
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("이미지 로드 실패: " + emojiPath + " - " + e.getMessage());
+        if (!adjacency.hasOutgoing(node) && node.getType() != NodeType.ORIGINAL) {
+            node.clearOutputImages();
         }
-        
-        // 파일이 없으면 플레이스홀더 생성
-        return createPlaceholderImage("emoji_rabbit.png", Color.YELLOW);
     }
     
-    private BufferedImage createPlaceholderImage(String fileName, Color backgroundColor) {
-        BufferedImage image = new BufferedImage(100, 80, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = image.createGraphics();
-        
-        g2d.setColor(backgroundColor);
-        g2d.fillRect(0, 0, 100, 80);
-        
-        g2d.setColor(Color.BLACK);
-        g2d.setFont(new Font("SansSerif", Font.BOLD, 8));
+    public void clearAllConnections() {
+        stopStream();
+        clearConnections();
         
-        String displayName = getFileNameWithoutExtension(fileName);
-        if (displayName.length() > 12) {
-            displayName = displayName.substring(0, 12) + "...";
+        for (Node node : graph.getNodes()) {
+            if (node.getType() != NodeType.ORIGINAL) {
+                node.clearInputImages();
+                node.clearOutputImages();
+            }
         }
         
-        FontMetrics fm = g2d.getFontMetrics();
-        int textWidth = fm.stringWidth(displayName);
-        int textHeight = fm.getHeight();
+        repaint();
+    }
+    
+    // 원본 이미지들을 현재 연결로 차례로 흘려 보냄 (백그라운드 스레드)
+    // 끝나면 EDT 에서 onFinished(중지 여부) 호출 - 새 시퀀스로 바뀐 경우에는 호출하지 않음
+    public void streamImages(ImageSource source, Consumer<Boolean> onFinished) {
+        stopStream();
         
-        g2d.drawString(displayName, (100 - textWidth) / 2, (80 + textHeight) / 2);
-        g2d.drawRect(0, 0, 99, 79);
+        GraphSnapshot snapshot = graph;
+        StreamingPipeline pipeline = new StreamingPipeline(graphExecutor.getRegistry(),
+            snapshot.getNodes(), snapshot.getConnections(), 2, 1);
+        activeStream = pipeline;
         
-        g2d.dispose();
-        return image;
+        StreamingPipeline.Listener listener = new StreamingPipeline.Listener() {
+            @Override
+            public void itemCompleted(Node node, StreamItem item, NodeResult result) {
+                if (activeStream == pipeline) {
+                    streamResults.put(node, result);
+                    scheduleStreamApply(pipeline);
+                }
+            }
+            
+            @Override
+            public void itemFailed(Node node, StreamItem item, Throwable error) {
+                System.err.println("처리 실패: " + item.getSource().getName() + " (" + node.getTitle() + ") - " + error.getMessage());
+            }
+        };
+        
+        Thread thread = new Thread(() -> {
+            try (ImageSource closeable = source) {
+                pipeline.run(closeable, listener);
+            } catch (IOException e) {
+                System.err.println("이미지 시퀀스 처리 실패: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            
+            SwingUtilities.invokeLater(() -> {
+                if (activeStream == pipeline || activeStream == null) {
+                    onFinished.accept(pipeline.isCancelled());
+                }
+            });
+        }, "image-stream");
+        thread.setDaemon(true);
+        thread.start();
     }
     
-    private void removeConnection(Connection connection) {
-        if (connections.contains(connection)) {
-            connections.remove(connection);
-            resetNodeAfterDisconnection(connection.getInputPort().getParentNode());
+    public void stopStream() {
+        if (activeStream != null) {
+            activeStream.cancel();
+            activeStream = null;
         }
+        streamResults.clear();
     }
     
-    private void resetNodeAfterDisconnection(Node node) {
-        node.getInputImages().clear();
-        node.getInputImageNames().clear();
+    // 결과가 빠르게 쌓여도 EDT 에는 한 번에 하나의 반영 작업만 올림
+    private void scheduleStreamApply(StreamingPipeline pipeline) {
+        if (!streamApplyScheduled.compareAndSet(false, true)) {
+            return;
+        }
         
-        boolean hasOutputConnection = connections.stream()
-            .anyMatch(c -> c.getOutputPort().getParentNode() == node);
+        SwingUtilities.invokeLater(() -> {
+            streamApplyScheduled.set(false);
+            if (activeStream != pipeline) {
+                return;
+            }
             
-        if (!hasOutputConnection && node.getType() != NodeType.ORIGINAL) {
-            node.getOutputImages().clear();
-            node.getOutputImageNames().clear();
-        }
+            for (Node node : new ArrayList<>(streamResults.keySet())) {
+                NodeResult result = streamResults.remove(node);
+                if (result != null && !result.isShownBy(node)) {
+                    node.setInputImages(result.getInputs().getImages(), result.getInputs().getNames());
+                    node.setOutputImages(result.getOutputs().getImages(), result.getOutputs().getNames());
+                }
+            }
+        });
     }
     
-    public void clearAllConnections() {
-        connections.clear();
-        
-        for (Node node : nodes) {
-            if (node.getType() != NodeType.ORIGINAL) {
-                node.getInputImages().clear();
-                node.getInputImageNames().clear();
-                node.getOutputImages().clear();
-                node.getOutputImageNames().clear();
+    public GraphDefinition getGraphDefinition() {
+        GraphSnapshot snapshot = graph;
+        return GraphDefinition.fromGraph(snapshot.getNodes(), snapshot.getConnections());
+    }
+    
+    // 저장된 배치와 연결을 현재 노드들에 적용 (노드 순서와 종류가 같아야 함)
+    public void applyGraphDefinition(GraphDefinition definition) {
+        List<GraphDefinition.NodeSpec> specs = definition.getNodes();
+        List<Node> nodes = graph.getNodes();
+        if (specs.size() != nodes.size()) {
+            throw new IllegalArgumentException("노드 구성이 다른 워크플로우입니다");
+        }
+        for (int i = 0; i < specs.size(); i++) {
+            if (specs.get(i).getType() != nodes.get(i).getType()) {
+                throw new IllegalArgumentException("노드 종류가 다릅니다: " + specs.get(i).getTitle());
             }
         }
         
-        repaint();
+        clearAllConnections();
+        
+        for (int i = 0; i < specs.size(); i++) {
+            nodes.get(i).setPosition(new Point(specs.get(i).getPosition()));
+            updateNodeLayout(nodes.get(i));
+        }
+        
+        Set<Node> targets = new LinkedHashSet<>();
+        for (Connection connection : definition.createConnections(nodes)) {
+            addConnection(connection);
+            targets.add(connection.getInputPort().getParentNode());
+        }
+        
+        runGraphFrom(targets);
+        repaintScheduler.markAllDirty();
     }
     
     public void resetAllNodes() {
-        connections.clear();
+        stopStream();
+        clearConnections();
+        graphExecutor.clearMemos();
         
-        for (Node node : nodes) {
-            node.getInputImages().clear();
-            node.getInputImageNames().clear();
-            node.getOutputImages().clear();
-            node.getOutputImageNames().clear();
+        for (Node node : graph.getNodes()) {
+            node.clearInputImages();
+            node.clearOutputImages();
             
             if (node.getType() == NodeType.ORIGINAL) {
                 node.loadImages(new String[] { "images/input.png" }, false);
@@ -1116,7 +1695,16 @@ class NodeCanvas extends JPanel {
         if (animationTimer != null) {
             animationTimer.stop();
         }
-        animatedImages.clear();
+        animatedSlots.clear();
+    }
+    
+    // 창을 닫을 때 - 진행 중인 처리를 멈추고 노드 이미지를 놓음
+    public void dispose() {
+        stopStream();
+        cleanupAnimations();
+        for (Node node : graph.getNodes()) {
+            node.dispose();
+        }
     }
 }
 
@@ -1131,6 +1719,24 @@ class Node {
     private List<String> inputImageNames;
     private List<String> outputImageNames;
     private NodeType type;
+    private List<NodeListener> listeners = new ArrayList<>();
+    private int inputLoadGeneration = 0;
+    private int outputLoadGeneration = 0;
+    // 목록별로 현재 세대에서 아직 읽는 중인 이미지 수 (이전 세대의 로딩은 세지 않음)
+    private int pendingInputLoads = 0;
+    private int pendingOutputLoads = 0;
+    // 현재 세대에서 읽지 못한 파일들 ("이름: 오류") - 자리에는 오류 표시 이미지가 들어감
+    private final List<String> inputLoadErrors = new ArrayList<>();
+    private final List<String> outputLoadErrors = new ArrayList<>();
+    private int zOrder = 0;
+    // 워커 스레드에서도 취소 여부를 확인하므로 volatile
+    private volatile int processingToken = 0;
+    private volatile boolean processing = false;
+    private double progress = -1;
+    
+    // 캔버스가 그려 둔 노드 표면 (배율 단계별)
+    private BufferedImage renderCache;
+    private double renderCacheScale;
     
     public Node(String title, Point position, NodeType type) {
         this.title = title;
@@ -1156,64 +1762,258 @@ class Node {
     public NodeType getType() { return type; }
     
     // Setters
-    public void setTitle(String title) { this.title = title; }
+    public void setTitle(String title) {
+        this.title = title;
+        invalidateRenderCache();
+    }
     public void setPosition(Point position) { this.position = position; }
     public void setType(NodeType type) { this.type = type; }
     
+    public int getZOrder() { return zOrder; }
+    public void setZOrder(int zOrder) { this.zOrder = zOrder; }
+    
+    public BufferedImage getRenderCache(double scale) {
+        return renderCache != null && renderCacheScale == scale ? renderCache : null;
+    }
+    
+    public void setRenderCache(BufferedImage surface, double scale) {
+        invalidateRenderCache();
+        this.renderCache = surface;
+        this.renderCacheScale = scale;
+    }
+    
+    public void invalidateRenderCache() {
+        if (renderCache != null) {
+            renderCache.flush();
+            renderCache = null;
+        }
+    }
+    
+    public void addNodeListener(NodeListener listener) { listeners.add(listener); }
+    public void removeNodeListener(NodeListener listener) { listeners.remove(listener); }
+    public boolean isLoading() { return pendingInputLoads > 0 || pendingOutputLoads > 0 || processing; }
+    public int getOutputLoadGeneration() { return outputLoadGeneration; }
+    public List<String> getInputLoadErrors() { return Collections.unmodifiableList(inputLoadErrors); }
+    public List<String> getOutputLoadErrors() { return Collections.unmodifiableList(outputLoadErrors); }
+    
+    // 백그라운드 처리 결과가 아직 유효한지 확인하기 위한 토큰
+    public int beginProcessing() {
+        processing = true;
+        return ++processingToken;
+    }
+    
+    public boolean isCurrentProcessing(int token) {
+        return processing && token == processingToken;
+    }
+    
+    public void endProcessing(int token) {
+        if (token == processingToken) {
+            processing = false;
+            progress = -1;
+        }
+    }
+    
+    public boolean isProcessing() { return processing; }
+    
+    // 0~1, 진행률을 모르면 -1
+    public double getProgress() { return progress; }
+    public void setProgress(double progress) { this.progress = progress; }
+    
     public void loadImages(String[] imageFileNames, boolean isInput) {
+        loadImages(imageFileNames, Arrays.asList(imageFileNames), isInput);
+    }
+    
+    // displayNames 는 노드에 표시하고 저장 파일 이름에 쓰는 이름
+    public void loadImages(String[] imageFileNames, List<String> displayNames, boolean isInput) {
         List<BufferedImage> images = isInput ? inputImages : outputImages;
         List<String> imageNames = isInput ? inputImageNames : outputImageNames;
         
-        // 기존 이미지들 정리
+        // 기존 이미지들 정리 (진행 중인 이전 로딩 결과는 세대 번호로 무시)
+        ThumbnailCache.getInstance().invalidate(images);
+        ImageStore.getInstance().release(images);
         images.clear();
         imageNames.clear();
         
-        for (String fileName : imageFileNames) {
-            try {
-                BufferedImage image;
-                File imageFile = new File(fileName);
-                
-                if (imageFile.exists()) {
-                    image = ImageIO.read(imageFile);
-                } else {
-                    // 상대 경로로도 시도
-                    imageFile = new File(System.getProperty("user.dir"), fileName);
-                    if (imageFile.exists()) {
-                        image = ImageIO.read(imageFile);
-                    } else {
-                        Color placeholderColor = getPlaceholderColor(fileName);
-                        image = createPlaceholderImage(fileName, placeholderColor);
+        final int generation = isInput ? ++inputLoadGeneration : ++outputLoadGeneration;
+        if (isInput) {
+            pendingInputLoads = imageFileNames.length;
+        } else {
+            pendingOutputLoads = imageFileNames.length;
+        }
+        (isInput ? inputLoadErrors : outputLoadErrors).clear();
+        
+        // 로딩 슬롯을 먼저 채우고 디코딩은 백그라운드에서 진행
+        for (int i = 0; i < imageFileNames.length; i++) {
+            final String fileName = imageFileNames[i];
+            final int slot = i;
+            
+            images.add(createPlaceholderImage("LOADING: " + getFileNameOnly(fileName), Color.LIGHT_GRAY));
+            imageNames.add(i < displayNames.size() ? displayNames.get(i) : fileName);
+            
+            // 오류는 디코딩 스레드에서 기록되고, 결과 반영은 그 뒤에 EDT 에서 일어남
+            String[] error = new String[1];
+            ImageLoadService.getInstance().load(
+                () -> {
+                    try {
+                        return readPreviewOrFail(fileName);
+                    } catch (IOException ex) {
+                        error[0] = getFileNameOnly(fileName) + ": " + ex.getMessage();
+                        return createPlaceholderImage("ERROR: " + getFileNameOnly(fileName), Color.RED);
                     }
-                }
-                
-                images.add(image);
-                imageNames.add(fileName);
-            } catch (IOException ex) {
-                System.err.println("이미지 로드 실패:");
-                System.err.println("  파일명: " + fileName);
-                System.err.println("  오류: " + ex.getMessage());
-                
-                BufferedImage errorImage = createPlaceholderImage("ERROR: " + getFileNameOnly(fileName), Color.RED);
-                images.add(errorImage);
-                imageNames.add(fileName);
+                },
+                image -> onImageLoaded(isInput, generation, slot, image, error[0]));
+        }
+        
+        fireImagesChanged();
+        if (imageFileNames.length == 0) {
+            fireImagesLoaded();
+        }
+    }
+    
+    // EDT 에서 호출됨
+    private void onImageLoaded(boolean isInput, int generation, int slot, BufferedImage image, String error) {
+        // 이전 세대의 로딩 결과는 버림 - 현재 세대의 남은 수에도 들어 있지 않음
+        int currentGeneration = isInput ? inputLoadGeneration : outputLoadGeneration;
+        List<BufferedImage> images = isInput ? inputImages : outputImages;
+        if (generation != currentGeneration || slot >= images.size()) {
+            return;
+        }
+        
+        int remaining = isInput ? --pendingInputLoads : --pendingOutputLoads;
+        if (error != null) {
+            (isInput ? inputLoadErrors : outputLoadErrors).add(error);
+        }
+        
+        ThumbnailCache.getInstance().invalidate(Collections.singletonList(images.get(slot)));
+        ImageStore.getInstance().release(Collections.singletonList(images.get(slot)));
+        ImageStore.getInstance().retain(Collections.singletonList(image));
+        images.set(slot, image);
+        fireImagesChanged();
+        
+        if (remaining == 0) {
+            fireImagesLoaded();
+        }
+    }
+    
+    // 화면에 보여 줄 이미지 - 썸네일 묶음 파일에 있으면 원본은 디코딩하지 않음
+    // 백그라운드 스레드에서 호출됨 (노드 처리기에서도 사용, 원본 픽셀은 ImageProxy.resolve 로)
+    static BufferedImage readPreview(String fileName) {
+        try {
+            return readPreviewOrFail(fileName);
+        } catch (IOException ex) {
+            System.err.println("이미지 로드 실패:");
+            System.err.println("  파일명: " + fileName);
+            System.err.println("  오류: " + ex.getMessage());
+            
+            return createPlaceholderImage("ERROR: " + getFileNameOnly(fileName), Color.RED);
+        }
+    }
+    
+    // 읽지 못하면 예외를 그대로 던짐 - 호출한 쪽에서 오류를 알릴 때 씀
+    static BufferedImage readPreviewOrFail(String fileName) throws IOException {
+        File imageFile = findImageFile(fileName);
+        if (imageFile != null) {
+            BufferedImage image = ThumbnailPack.getInstance().read(imageFile);
+            if (image == null) {
+                throw new IOException("이미지를 읽을 수 없습니다");
             }
+            return image;
+        }
+        
+        Color placeholderColor = getPlaceholderColor(fileName);
+        return createPlaceholderImage(fileName, placeholderColor);
+    }
+    
+    static File findImageFile(String fileName) {
+        File imageFile = new File(fileName);
+        if (imageFile.exists()) {
+            return imageFile;
         }
+        
+        // 상대 경로로도 시도
+        imageFile = new File(System.getProperty("user.dir"), fileName);
+        return imageFile.exists() ? imageFile : null;
     }
     
     public void setInputImages(List<BufferedImage> images, List<String> imageNames) {
-        inputImages.clear();
-        inputImageNames.clear();
+        replaceImages(true, images, imageNames);
+    }
+    
+    public void setOutputImages(List<BufferedImage> images, List<String> imageNames) {
+        replaceImages(false, images, imageNames);
+    }
+    
+    // 지우면 진행 중이던 백그라운드 처리 결과도 버림
+    public void clearInputImages() {
+        cancelProcessing();
+        replaceImages(true, null, null);
+    }
+    
+    public void clearOutputImages() {
+        cancelProcessing();
+        replaceImages(false, null, null);
+    }
+    
+    public void cancelProcessing() {
+        processingToken++;
+        processing = false;
+        progress = -1;
+    }
+    
+    // 처리 중에 먼저 나온 출력을 하나씩 덧붙임
+    public void appendOutputImage(BufferedImage image, String imageName) {
+        ImageStore.getInstance().retain(Collections.singletonList(image));
+        outputImages.add(image);
+        outputImageNames.add(imageName);
+        fireImagesChanged();
+    }
+    
+    private void replaceImages(boolean isInput, List<BufferedImage> images, List<String> imageNames) {
+        List<BufferedImage> targetImages = isInput ? inputImages : outputImages;
+        List<String> targetNames = isInput ? inputImageNames : outputImageNames;
+        
+        ThumbnailCache.getInstance().invalidate(targetImages);
+        ImageStore.getInstance().release(targetImages);
+        targetImages.clear();
+        targetNames.clear();
+        
+        // 진행 중이던 로딩은 버림
+        if (isInput) {
+            inputLoadGeneration++;
+            pendingInputLoads = 0;
+            inputLoadErrors.clear();
+        } else {
+            outputLoadGeneration++;
+            pendingOutputLoads = 0;
+            outputLoadErrors.clear();
+        }
         
         if (images != null) {
-            inputImages.addAll(images);
+            ImageStore.getInstance().retain(images);
+            targetImages.addAll(images);
         }
         
         if (imageNames != null) {
-            inputImageNames.addAll(imageNames);
+            targetNames.addAll(imageNames);
+        }
+        
+        fireImagesChanged();
+    }
+    
+    private void fireImagesChanged() {
+        invalidateRenderCache();
+        for (NodeListener listener : new ArrayList<>(listeners)) {
+            listener.imagesChanged(this);
         }
     }
     
-    private Color getPlaceholderColor(String fileName) {
+    private void fireImagesLoaded() {
+        for (NodeListener listener : new ArrayList<>(listeners)) {
+            listener.imagesLoaded(this);
+        }
+    }
+    
+    private static Color getPlaceholderColor(String fileName) {
         String lowerFileName = fileName.toLowerCase();
         
         if (lowerFileName.contains("input")) return Color.CYAN;
@@ -1229,7 +2029,12 @@ class Node {
         return Color.GRAY;
     }
     
-    private BufferedImage createPlaceholderImage(String fileName, Color backgroundColor) {
+    static BufferedImage createPlaceholderImage(String fileName, Color backgroundColor) {
+        String key = "node:" + fileName + ":" + backgroundColor.getRGB();
+        return ImageCache.getInstance().getPlaceholder(key, () -> drawPlaceholderImage(fileName, backgroundColor));
+    }
+    
+    private static BufferedImage drawPlaceholderImage(String fileName, Color backgroundColor) {
         BufferedImage image = new BufferedImage(100, 80, BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = image.createGraphics();
         
@@ -1258,7 +2063,7 @@ class Node {
         return image;
     }
     
-    private String getFileNameWithoutExtension(String fileName) {
+    private static String getFileNameWithoutExtension(String fileName) {
         int dotIndex = fileName.lastIndexOf('.');
         if (dotIndex > 0) {
             return fileName.substring(0, dotIndex);
@@ -1266,7 +2071,7 @@ class Node {
         return fileName;
     }
     
-    private String getFileNameOnly(String fullPath) {
+    static String getFileNameOnly(String fullPath) {
         int slashIndex = Math.max(fullPath.lastIndexOf('/'), fullPath.lastIndexOf('\\'));
         if (slashIndex >= 0) {
             return fullPath.substring(slashIndex + 1);
@@ -1275,21 +2080,20 @@ class Node {
     }
     
     public void dispose() {
-        // Input 이미지들 정리
-        for (BufferedImage img : inputImages) {
-            if (img != null) {
-                img.flush();
-            }
-        }
+        cancelProcessing();
+        invalidateRenderCache();
+        
+        // Input 이미지들 정리 (저장소 이미지는 이 노드의 참조만 놓음)
+        ThumbnailCache.getInstance().invalidate(inputImages);
+        ImageStore.getInstance().release(inputImages);
         inputImages.clear();
+        inputImageNames.clear();
         
         // Output 이미지들 정리
-        for (BufferedImage img : outputImages) {
-            if (img != null) {
-                img.flush();
-            }
-        }
+        ThumbnailCache.getInstance().invalidate(outputImages);
+        ImageStore.getInstance().release(outputImages);
         outputImages.clear();
+        outputImageNames.clear();
     }
 }
 
@@ -1337,9 +2141,18 @@ enum PortType {
 
 // ================= Connection 클래스 =================
 class Connection {
+    private static final double FLATNESS = 0.5;
+    
     private NodePort outputPort;
     private NodePort inputPort;
     
+    // 캐시된 곡선 형상 (캔버스 좌표)
+    private Point cachedStart;
+    private Point cachedEnd;
+    private CubicCurve2D curve;
+    private float[] polyline;
+    private Rectangle bounds;
+    
     public Connection(NodePort outputPort, NodePort inputPort) {
         if (outputPort.getType() == PortType.OUTPUT && inputPort.getType() == PortType.INPUT) {
             this.outputPort = outputPort;
@@ -1353,9 +2166,5013 @@ class Connection {
     // Getters
     public NodePort getOutputPort() { return outputPort; }
     public NodePort getInputPort() { return inputPort; }
+    public CubicCurve2D getCurve() { return curve; }
+    public Rectangle getBounds() { return bounds; }
     
     // Setters
     public void setOutputPort(NodePort outputPort) { this.outputPort = outputPort; }
     public void setInputPort(NodePort inputPort) { this.inputPort = inputPort; }
-
-}
+    
+    public static CubicCurve2D createCurve(Point start, Point end) {
+        int controlOffset = Math.abs(end.x - start.x) / 2;
+        return new CubicCurve2D.Float(
+            start.x, start.y,
+            start.x + controlOffset, start.y,
+            end.x - controlOffset, end.y,
+            end.x, end.y
+        );
+    }
+    
+    // 양 끝점이 바뀐 경우에만 곡선을 다시 평탄화
+    public void updateGeometry(Point start, Point end) {
+        if (curve != null && start.equals(cachedStart) && end.equals(cachedEnd)) {
+            return;
+        }
+        
+        cachedStart = new Point(start);
+        cachedEnd = new Point(end);
+        curve = createCurve(start, end);
+        
+        float[] points = new float[64];
+        int count = 0;
+        float[] coords = new float[6];
+        
+        for (PathIterator it = curve.getPathIterator(null, FLATNESS); !it.isDone(); it.next()) {
+            it.currentSegment(coords);
+            if (count + 2 > points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+            }
+            points[count++] = coords[0];
+            points[count++] = coords[1];
+        }
+        
+        polyline = Arrays.copyOf(points, count);
+        bounds = curve.getBounds();
+    }
+    
+    public boolean isNear(double x, double y, double threshold) {
+        if (polyline == null) {
+            return false;
+        }
+        
+        // 경계 상자 밖이면 선분 거리 계산 없이 바로 제외
+        if (x < bounds.x - threshold || x > bounds.x + bounds.width + threshold ||
+            y < bounds.y - threshold || y > bounds.y + bounds.height + threshold) {
+            return false;
+        }
+        
+        double thresholdSq = threshold * threshold;
+        for (int i = 0; i + 3 < polyline.length; i += 2) {
+            if (Line2D.ptSegDistSq(polyline[i], polyline[i + 1], polyline[i + 2], polyline[i + 3], x, y) <= thresholdSq) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+// ================= GraphSnapshot 클래스 =================
+// 한 시점의 그래프 - 노드 목록, 연결 목록, 노드별 종류와 출력 이미지만 고정됨 (만든 뒤에는 바뀌지 않음)
+// Node 객체 자체는 그대로 공유하므로 위치, z 순서, 입력 이미지 목록 등은 여전히 EDT 에서만 읽고 씀
+// 그래프 실행(워커 스레드)은 노드에서 아무것도 읽지 않고 이 스냅샷의 값만 씀
+// with... 는 바뀐 부분만 새로 만들고 나머지 목록은 이전 스냅샷과 같이 씀
+// (노드와 연결이 수십 개 정도라 바뀐 목록은 통째로 복사)
+class GraphSnapshot {
+    public static final GraphSnapshot EMPTY = new GraphSnapshot(0,
+        Collections.emptyList(), Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap());
+    
+    private final long version;
+    private final List<Node> nodes;
+    private final List<Connection> connections;
+    private final Map<Node, NodeType> types;
+    private final Map<Node, ImageSet> outputs;
+    
+    private GraphSnapshot(long version, List<Node> nodes, List<Connection> connections,
+                          Map<Node, NodeType> types, Map<Node, ImageSet> outputs) {
+        this.version = version;
+        this.nodes = nodes;
+        this.connections = connections;
+        this.types = types;
+        this.outputs = outputs;
+    }
+    
+    public long getVersion() { return version; }
+    public List<Node> getNodes() { return nodes; }
+    public List<Connection> getConnections() { return connections; }
+    
+    // 노드를 추가할 때의 종류
+    public NodeType getType(Node node) {
+        NodeType type = types.get(node);
+        if (type == null) {
+            throw new IllegalArgumentException("그래프에 없는 노드입니다: " + node.getTitle());
+        }
+        return type;
+    }
+    
+    // 스냅샷을 만들 때 노드가 가지고 있던 출력 이미지
+    public ImageSet getOutputs(Node node) {
+        return outputs.getOrDefault(node, ImageSet.EMPTY);
+    }
+    
+    // 아래 메서드들은 노드 이미지 목록을 읽으므로 노드를 수정하는 스레드(EDT)에서 호출해야 함
+    public GraphSnapshot withNode(Node node) {
+        if (types.containsKey(node)) {
+            throw new IllegalArgumentException("이미 그래프에 있는 노드입니다: " + node.getTitle());
+        }
+        List<Node> newNodes = new ArrayList<>(nodes);
+        newNodes.add(node);
+        Map<Node, NodeType> newTypes = new HashMap<>(types);
+        newTypes.put(node, node.getType());
+        return new GraphSnapshot(version + 1, Collections.unmodifiableList(newNodes), connections,
+            Collections.unmodifiableMap(newTypes), withOutput(node, captureOutputs(node)));
+    }
+    
+    // 그래프에 없는 노드면 IllegalArgumentException (노드를 추가하기 전에 이미지가 바뀐 것으로 알림이 온 경우)
+    public GraphSnapshot withOutputs(Node node) {
+        ImageSet current = outputs.get(node);
+        if (current == null) {
+            throw new IllegalArgumentException("그래프에 없는 노드입니다: " + node.getTitle());
+        }
+        if (current.sameAs(node.getOutputImages(), node.getOutputImageNames())) {
+            return this;
+        }
+        return new GraphSnapshot(version + 1, nodes, connections, types, withOutput(node, captureOutputs(node)));
+    }
+    
+    public GraphSnapshot withConnection(Connection connection) {
+        List<Connection> newConnections = new ArrayList<>(connections);
+        newConnections.add(connection);
+        return new GraphSnapshot(version + 1, nodes, Collections.unmodifiableList(newConnections), types, outputs);
+    }
+    
+    public GraphSnapshot withoutConnection(Connection connection) {
+        if (!connections.contains(connection)) {
+            return this;
+        }
+        List<Connection> newConnections = new ArrayList<>(connections);
+        newConnections.remove(connection);
+        return new GraphSnapshot(version + 1, nodes, Collections.unmodifiableList(newConnections), types, outputs);
+    }
+    
+    public GraphSnapshot withoutConnections() {
+        if (connections.isEmpty()) {
+            return this;
+        }
+        return new GraphSnapshot(version + 1, nodes, Collections.emptyList(), types, outputs);
+    }
+    
+    private Map<Node, ImageSet> withOutput(Node node, ImageSet images) {
+        Map<Node, ImageSet> newOutputs = new HashMap<>(outputs);
+        newOutputs.put(node, images);
+        return Collections.unmodifiableMap(newOutputs);
+    }
+    
+    private static ImageSet captureOutputs(Node node) {
+        return new ImageSet(node.getOutputImages(), node.getOutputImageNames());
+    }
+}
+
+// ================= AdjacencyIndex 클래스 =================
+// 연결의 인접 목록 - 포트 쌍과 노드별 들어오고 나가는 연결을 해시로 찾음 (EDT 전용)
+// 중복 확인, 연결 추가/삭제, 노드의 연결 조회는 연결 수와 관계없이 상수 시간
+class AdjacencyIndex {
+    // 출력 포트 -> 입력 포트 -> 연결
+    private final Map<NodePort, Map<NodePort, Connection>> byPort = new HashMap<>();
+    private final Map<Node, Set<Connection>> outgoing = new HashMap<>();
+    private final Map<Node, Set<Connection>> incoming = new HashMap<>();
+    
+    public void add(Connection connection) {
+        byPort.computeIfAbsent(connection.getOutputPort(), k -> new HashMap<>())
+            .put(connection.getInputPort(), connection);
+        outgoing.computeIfAbsent(connection.getOutputPort().getParentNode(), k -> new LinkedHashSet<>()).add(connection);
+        incoming.computeIfAbsent(connection.getInputPort().getParentNode(), k -> new LinkedHashSet<>()).add(connection);
+    }
+    
+    public boolean remove(Connection connection) {
+        Map<NodePort, Connection> targets = byPort.get(connection.getOutputPort());
+        if (targets == null || targets.get(connection.getInputPort()) != connection) {
+            return false;
+        }
+        
+        targets.remove(connection.getInputPort());
+        if (targets.isEmpty()) {
+            byPort.remove(connection.getOutputPort());
+        }
+        removeFrom(outgoing, connection.getOutputPort().getParentNode(), connection);
+        removeFrom(incoming, connection.getInputPort().getParentNode(), connection);
+        return true;
+    }
+    
+    public void clear() {
+        byPort.clear();
+        outgoing.clear();
+        incoming.clear();
+    }
+    
+    public boolean contains(Connection connection) {
+        return find(connection.getOutputPort(), connection.getInputPort()) == connection;
+    }
+    
+    public Connection find(NodePort outputPort, NodePort inputPort) {
+        Map<NodePort, Connection> targets = byPort.get(outputPort);
+        return targets != null ? targets.get(inputPort) : null;
+    }
+    
+    public Set<Connection> getOutgoing(Node node) {
+        return Collections.unmodifiableSet(outgoing.getOrDefault(node, Collections.emptySet()));
+    }
+    
+    public Set<Connection> getIncoming(Node node) {
+        return Collections.unmodifiableSet(incoming.getOrDefault(node, Collections.emptySet()));
+    }
+    
+    public boolean hasOutgoing(Node node) {
+        Set<Connection> connections = outgoing.get(node);
+        return connections != null && !connections.isEmpty();
+    }
+    
+    // from -> to 연결을 더하면 순환이 생기는지 - to 의 하위 노드만 따라감
+    public boolean wouldCreateCycle(Node from, Node to) {
+        if (from == to) {
+            return true;
+        }
+        
+        Set<Node> visited = new HashSet<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(to);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (!visited.add(node)) {
+                continue;
+            }
+            for (Connection connection : outgoing.getOrDefault(node, Collections.emptySet())) {
+                Node child = connection.getInputPort().getParentNode();
+                if (child == from) {
+                    return true;
+                }
+                stack.push(child);
+            }
+        }
+        return false;
+    }
+    
+    private static void removeFrom(Map<Node, Set<Connection>> map, Node node, Connection connection) {
+        Set<Connection> connections = map.get(node);
+        if (connections != null) {
+            connections.remove(connection);
+            if (connections.isEmpty()) {
+                map.remove(node);
+            }
+        }
+    }
+}
+
+// ================= NodeListener 인터페이스 =================
+interface NodeListener {
+    // 이미지 목록이나 슬롯 내용이 바뀌었을 때
+    void imagesChanged(Node node);
+    
+    // loadImages 로 요청한 이미지가 모두 디코딩되었을 때
+    void imagesLoaded(Node node);
+}
+
+// ================= ImageLoadService 클래스 =================
+class ImageLoadService {
+    private static final ImageLoadService instance = new ImageLoadService();
+    
+    private final ExecutorService executor;
+    
+    private ImageLoadService() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadCount = new AtomicInteger();
+        
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "image-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+    
+    public static ImageLoadService getInstance() {
+        return instance;
+    }
+    
+    // decoder 는 백그라운드에서, onLoaded 는 EDT 에서 실행
+    public void load(Callable<BufferedImage> decoder, Consumer<BufferedImage> onLoaded) {
+        executor.execute(() -> {
+            BufferedImage image = null;
+            try {
+                image = decoder.call();
+            } catch (Exception ex) {
+                System.err.println("이미지 디코딩 실패: " + ex.getMessage());
+            }
+            
+            final BufferedImage result = image;
+            SwingUtilities.invokeLater(() -> onLoaded.accept(result));
+        });
+    }
+}
+
+// ================= ThumbnailCache 클래스 =================
+class ThumbnailCache {
+    private static final ThumbnailCache instance = new ThumbnailCache(32L * 1024 * 1024);
+    
+    // 노드 표면은 배율을 0.25 단위로 묶어서 휠 한 칸마다 다시 그리지 않도록 함
+    private static final double ZOOM_BUCKET_STEP = 0.25;
+    // 이보다 큰 단계는 행을 나눠 병렬로 만듦
+    private static final int PARALLEL_PIXELS = 256 * 256;
+    // 화면 형식 복사본은 원래 크기에 가깝게 보이는 이미지에만 만드므로 화면 몇 장 분량이면 충분함
+    private static final long MAX_BASE_BYTES = 128L * 1024 * 1024;
+    
+    private final long maxBytes;
+    private long currentBytes = 0;
+    private long baseBytes = 0;
+    // 원본 이미지별 밉맵 (1/2, 1/4, ... 크기 단계) - 오래 안 쓴 것부터 버림
+    private final LinkedHashMap<SourceKey, Pyramid> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private Consumer<BufferedImage> levelListener;
+    
+    public ThumbnailCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    public static ThumbnailCache getInstance() {
+        return instance;
+    }
+    
+    // 새 단계가 만들어지면 EDT 에서 원본 이미지와 함께 호출됨
+    public synchronized void setLevelListener(Consumer<BufferedImage> levelListener) {
+        this.levelListener = levelListener;
+    }
+    
+    // 화면에 (width x height) * scale 픽셀로 그릴 때 쓸 이미지 - 그 크기 이상인 가장 작은 단계
+    // 아직 없는 단계는 백그라운드에서 만들고, 그동안은 이미 있는 단계 중 가장 작은 것(또는 원본)을 돌려줌
+    // 화면 형식이 아니거나 힙 밖에 있는 원본(저장소, 매핑 파일)을 원래 크기로 그릴 때는 화면 형식 복사본을 만들어 돌려줌
+    public synchronized BufferedImage getThumbnail(BufferedImage source, int width, int height, double scale) {
+        int targetWidth = Math.max(1, (int) Math.ceil(width * scale));
+        int targetHeight = Math.max(1, (int) Math.ceil(height * scale));
+        
+        int level = 0;
+        int levelWidth = source.getWidth();
+        int levelHeight = source.getHeight();
+        while (levelWidth / 2 >= targetWidth && levelHeight / 2 >= targetHeight) {
+            levelWidth /= 2;
+            levelHeight /= 2;
+            level++;
+        }
+        if (level == 0 && !needsDisplayCopy(source)) {
+            return source;
+        }
+        
+        SourceKey key = new SourceKey(source);
+        Pyramid pyramid = entries.get(key);
+        if (pyramid == null) {
+            pyramid = new Pyramid();
+            entries.put(key, pyramid);
+        }
+        
+        if (level == 0) {
+            if (pyramid.base == null) {
+                pyramid.baseRequested = true;
+                requestLevels(key, pyramid);
+                return source;
+            }
+            return pyramid.base;
+        }
+        
+        if (pyramid.levels.size() >= level) {
+            return pyramid.levels.get(level - 1);
+        }
+        
+        pyramid.requestedLevel = Math.max(pyramid.requestedLevel, level);
+        requestLevels(key, pyramid);
+        if (!pyramid.levels.isEmpty()) {
+            return pyramid.levels.get(pyramid.levels.size() - 1);
+        }
+        return pyramid.base != null ? pyramid.base : source;
+    }
+    
+    public synchronized void invalidate(Collection<BufferedImage> images) {
+        if (images.isEmpty() || entries.isEmpty()) {
+            return;
+        }
+        
+        Set<BufferedImage> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+        targets.addAll(images);
+        
+        Iterator<Map.Entry<SourceKey, Pyramid>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<SourceKey, Pyramid> entry = it.next();
+            BufferedImage source = entry.getKey().source.get();
+            if (source == null || targets.contains(source)) {
+                release(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+    
+    public synchronized void clear() {
+        for (Pyramid pyramid : entries.values()) {
+            release(pyramid);
+        }
+        entries.clear();
+    }
+    
+    public static double getZoomBucket(double scale) {
+        return Math.max(ZOOM_BUCKET_STEP, Math.ceil(scale / ZOOM_BUCKET_STEP) * ZOOM_BUCKET_STEP);
+    }
+    
+    // 이미지마다 한 작업씩 이미지 로더 스레드들에서 병렬로 만듦
+    private void requestLevels(SourceKey key, Pyramid pyramid) {
+        if (pyramid.building) {
+            // 진행 중인 작업이 끝나기 전에 새 목표까지 이어서 만듦
+            return;
+        }
+        pyramid.building = true;
+        
+        ImageLoadService.getInstance().load(
+            () -> buildLevels(key, pyramid),
+            source -> {
+                Consumer<BufferedImage> listener;
+                synchronized (this) {
+                    listener = levelListener;
+                }
+                if (source != null && listener != null) {
+                    listener.accept(source);
+                }
+            });
+    }
+    
+    // 백그라운드 스레드 - 바로 앞 단계를 2x2 평균으로 줄여 가며 요청된 단계까지 만듦
+    // 힙 밖 원본은 한 번 힙으로 복사해서 줄임 (원래 크기로 그리려고 요청된 경우에만 화면 형식 복사본을 남김)
+    private BufferedImage buildLevels(SourceKey key, Pyramid pyramid) {
+        BufferedImage source = key.source.get();
+        if (source == null) {
+            return null;
+        }
+        
+        BufferedImage heapSource = null;
+        while (true) {
+            BufferedImage previous;
+            boolean buildBase;
+            synchronized (this) {
+                if (entries.get(key) != pyramid) {
+                    return null;
+                }
+                buildBase = pyramid.baseRequested && pyramid.base == null;
+                if (!buildBase && pyramid.levels.size() >= pyramid.requestedLevel) {
+                    pyramid.building = false;
+                    return source;
+                }
+                previous = pyramid.levels.isEmpty() ? pyramid.base : pyramid.levels.get(pyramid.levels.size() - 1);
+            }
+            
+            if (buildBase || previous == null) {
+                if (heapSource == null) {
+                    heapSource = OffHeapDataBuffer.toHeapImage(source);
+                }
+                if (buildBase) {
+                    BufferedImage base = toCompatibleImage(heapSource, source.getColorModel().getTransparency());
+                    synchronized (this) {
+                        if (entries.get(key) != pyramid) {
+                            return null;
+                        }
+                        pyramid.base = base;
+                        baseBytes += getByteSize(base);
+                        evictBasesIfNeeded(pyramid);
+                    }
+                    continue;
+                }
+                previous = heapSource;
+            }
+            
+            int transparency = source.getColorModel().getTransparency();
+            BufferedImage level = toCompatibleImage(halve(previous), transparency);
+            
+            synchronized (this) {
+                if (entries.get(key) != pyramid) {
+                    return null;
+                }
+                pyramid.levels.add(level);
+                currentBytes += getByteSize(level);
+                evictIfNeeded(pyramid);
+            }
+        }
+    }
+    
+    // 2x2 픽셀 평균 (면적 평균) - 투명한 픽셀의 색이 가장자리에 번지지 않도록 알파를 곱해서 평균
+    static BufferedImage halve(BufferedImage source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int halfWidth = Math.max(1, width / 2);
+        int halfHeight = Math.max(1, height / 2);
+        boolean hasAlpha = source.getColorModel().hasAlpha();
+        BufferedImage target = new BufferedImage(halfWidth, halfHeight,
+            hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        
+        IntStream rows = IntStream.range(0, halfHeight);
+        if ((long) halfWidth * halfHeight >= PARALLEL_PIXELS) {
+            rows = rows.parallel();
+        }
+        
+        rows.forEach(y -> {
+            int[] top = new int[width];
+            int[] bottom = new int[width];
+            int[] result = new int[halfWidth];
+            source.getRGB(0, Math.min(y * 2, height - 1), width, 1, top, 0, width);
+            source.getRGB(0, Math.min(y * 2 + 1, height - 1), width, 1, bottom, 0, width);
+            
+            for (int x = 0; x < halfWidth; x++) {
+                int left = Math.min(x * 2, width - 1);
+                int right = Math.min(x * 2 + 1, width - 1);
+                result[x] = average(top[left], top[right], bottom[left], bottom[right], hasAlpha);
+            }
+            target.setRGB(0, y, halfWidth, 1, result, 0, halfWidth);
+        });
+        return target;
+    }
+    
+    private static int average(int p0, int p1, int p2, int p3, boolean hasAlpha) {
+        if (!hasAlpha) {
+            int r = ((p0 >> 16 & 0xff) + (p1 >> 16 & 0xff) + (p2 >> 16 & 0xff) + (p3 >> 16 & 0xff) + 2) >> 2;
+            int g = ((p0 >> 8 & 0xff) + (p1 >> 8 & 0xff) + (p2 >> 8 & 0xff) + (p3 >> 8 & 0xff) + 2) >> 2;
+            int b = ((p0 & 0xff) + (p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff) + 2) >> 2;
+            return 0xff000000 | r << 16 | g << 8 | b;
+        }
+        
+        int a0 = p0 >>> 24, a1 = p1 >>> 24, a2 = p2 >>> 24, a3 = p3 >>> 24;
+        int alphaSum = a0 + a1 + a2 + a3;
+        if (alphaSum == 0) {
+            return 0;
+        }
+        
+        int half = alphaSum / 2;
+        int r = ((p0 >> 16 & 0xff) * a0 + (p1 >> 16 & 0xff) * a1 + (p2 >> 16 & 0xff) * a2 + (p3 >> 16 & 0xff) * a3 + half) / alphaSum;
+        int g = ((p0 >> 8 & 0xff) * a0 + (p1 >> 8 & 0xff) * a1 + (p2 >> 8 & 0xff) * a2 + (p3 >> 8 & 0xff) * a3 + half) / alphaSum;
+        int b = ((p0 & 0xff) * a0 + (p1 & 0xff) * a1 + (p2 & 0xff) * a2 + (p3 & 0xff) * a3 + half) / alphaSum;
+        return (alphaSum + 2) >> 2 << 24 | r << 16 | g << 8 | b;
+    }
+    
+    private void evictIfNeeded(Pyramid current) {
+        Iterator<Map.Entry<SourceKey, Pyramid>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Pyramid pyramid = it.next().getValue();
+            if (pyramid == current) {
+                continue;
+            }
+            release(pyramid);
+            it.remove();
+        }
+    }
+    
+    private void evictBasesIfNeeded(Pyramid current) {
+        Iterator<Pyramid> it = entries.values().iterator();
+        while (baseBytes > MAX_BASE_BYTES && it.hasNext()) {
+            Pyramid pyramid = it.next();
+            if (pyramid != current) {
+                releaseBase(pyramid);
+            }
+        }
+    }
+    
+    private void release(Pyramid pyramid) {
+        for (BufferedImage level : pyramid.levels) {
+            currentBytes -= getByteSize(level);
+            level.flush();
+        }
+        pyramid.levels.clear();
+        releaseBase(pyramid);
+    }
+    
+    private void releaseBase(Pyramid pyramid) {
+        if (pyramid.base != null) {
+            baseBytes -= getByteSize(pyramid.base);
+            pyramid.base.flush();
+            pyramid.base = null;
+            pyramid.baseRequested = false;
+        }
+    }
+    
+    private static long getByteSize(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+    
+    // 절반씩 단계적으로 줄여서 한 번에 크게 줄일 때 생기는 계단 현상을 막음
+    static BufferedImage createScaledImage(BufferedImage source, int width, int height) {
+        int transparency = source.getColorModel().getTransparency();
+        int stepType = transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        
+        do {
+            currentWidth = currentWidth > width ? Math.max(width, currentWidth / 2) : width;
+            currentHeight = currentHeight > height ? Math.max(height, currentHeight / 2) : height;
+            
+            BufferedImage step = new BufferedImage(currentWidth, currentHeight, stepType);
+            Graphics2D g2d = step.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            g2d.dispose();
+            
+            current = step;
+        } while (currentWidth != width || currentHeight != height);
+        
+        return toCompatibleImage(current, transparency);
+    }
+    
+    // 화면과 같은 픽셀 포맷으로 바꿔 두면 그릴 때 가속 경로를 탐 (EDT 밖에서 미리 바꿔 둠)
+    static BufferedImage toCompatibleImage(BufferedImage image, int transparency) {
+        if (isCompatible(image, transparency)) {
+            return image;
+        }
+        
+        GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice().getDefaultConfiguration();
+        BufferedImage compatible = config.createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
+        Graphics2D g2d = compatible.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return compatible;
+    }
+    
+    // 화면이 없으면 변환하지 않음 (일괄 처리)
+    static boolean isCompatible(BufferedImage image, int transparency) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return true;
+        }
+        
+        GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice().getDefaultConfiguration();
+        return image.getColorModel().equals(config.getColorModel(transparency));
+    }
+    
+    // 그대로 그리면 Java2D 의 느린 일반 루프를 타는 원본 - 디코딩한 그대로의 결과 이미지, 저장소, 매핑 파일
+    static boolean needsDisplayCopy(BufferedImage image) {
+        return OffHeapDataBuffer.isOffHeap(image) || !isCompatible(image, image.getColorModel().getTransparency());
+    }
+    
+    private static class Pyramid {
+        // levels[0] 이 원본의 1/2 크기
+        private final List<BufferedImage> levels = new ArrayList<>();
+        // 원래 크기로 그릴 때 쓰는 화면 형식 복사본 (needsDisplayCopy 인 원본만)
+        private BufferedImage base;
+        private int requestedLevel = 0;
+        private boolean baseRequested = false;
+        private boolean building = false;
+    }
+    
+    private static class SourceKey {
+        private final WeakReference<BufferedImage> source;
+        private final int identityHash;
+        
+        SourceKey(BufferedImage source) {
+            this.source = new WeakReference<>(source);
+            this.identityHash = System.identityHashCode(source);
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof SourceKey)) return false;
+            
+            BufferedImage image = source.get();
+            return image != null && image == ((SourceKey) obj).source.get();
+        }
+        
+        @Override
+        public int hashCode() {
+            return identityHash;
+        }
+    }
+}
+
+// ================= ImageCache 클래스 =================
+class ImageCache {
+    private static final ImageCache instance = new ImageCache(256L * 1024 * 1024);
+    
+    private final long maxBytes;
+    private long currentBytes = 0;
+    
+    // 경로 -> 수정시각, 크기, 내용 해시 (파일이 바뀌면 같은 경로의 기록을 바꿔 씀, 오래 안 읽은 경로부터 정리)
+    private static final int MAX_FILE_HASHES = 4096;
+    private final LinkedHashMap<String, FileHash> fileHashes = new LinkedHashMap<String, FileHash>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileHash> eldest) {
+            return size() > MAX_FILE_HASHES;
+        }
+    };
+    // 내용 해시 -> 디코딩된 이미지 (바이트 예산 LRU)
+    private final LinkedHashMap<String, BufferedImage> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // 예산 초과로 밀려난 이미지는 GC 가 회수하기 전까지 재사용
+    private final Map<String, SoftReference<BufferedImage>> evictedEntries = new HashMap<>();
+    private final Map<String, BufferedImage> placeholders = new HashMap<>();
+    
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    public static ImageCache getInstance() {
+        return instance;
+    }
+    
+    // 반환된 이미지는 여러 노드가 공유하므로 수정하면 안 됨
+    public BufferedImage read(File file) throws IOException {
+        File canonicalFile = file.getCanonicalFile();
+        String path = canonicalFile.getPath();
+        long lastModified = canonicalFile.lastModified();
+        long length = canonicalFile.length();
+        
+        synchronized (this) {
+            FileHash fileHash = fileHashes.get(path);
+            String hash = fileHash != null && fileHash.lastModified == lastModified && fileHash.length == length
+                ? fileHash.hash : null;
+            BufferedImage cached = hash != null ? lookup(hash) : null;
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        byte[] data = Files.readAllBytes(canonicalFile.toPath());
+        String hash = hashContent(data);
+        
+        synchronized (this) {
+            fileHashes.put(path, new FileHash(lastModified, length, hash));
+            
+            // 내용이 같은 다른 파일이 이미 디코딩되어 있으면 그대로 사용
+            BufferedImage cached = lookup(hash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        BufferedImage image = decode(data);
+        if (image == null) {
+            return null;
+        }
+        
+        synchronized (this) {
+            // 다른 스레드가 먼저 디코딩을 끝냈으면 그쪽 결과를 공유
+            BufferedImage cached = lookup(hash);
+            if (cached != null) {
+                return cached;
+            }
+            
+            store(hash, image);
+            return image;
+        }
+    }
+    
+    // 여러 프레임짜리 GIF 는 모든 프레임을 읽어 AnimatedImage 로 등록하고 첫 프레임을 돌려줌
+    static BufferedImage decode(byte[] data) throws IOException {
+        if (AnimatedImage.isGif(data)) {
+            AnimatedImage animation = AnimatedImage.read(data);
+            if (animation != null) {
+                return animation.getPoster();
+            }
+        }
+        return ImageIO.read(new ByteArrayInputStream(data));
+    }
+    
+    public synchronized BufferedImage getPlaceholder(String key, Supplier<BufferedImage> factory) {
+        return placeholders.computeIfAbsent(key, k -> factory.get());
+    }
+    
+    public synchronized void clear() {
+        fileHashes.clear();
+        entries.clear();
+        evictedEntries.clear();
+        placeholders.clear();
+        currentBytes = 0;
+    }
+    
+    private BufferedImage lookup(String hash) {
+        BufferedImage image = entries.get(hash);
+        if (image != null) {
+            return image;
+        }
+        
+        SoftReference<BufferedImage> ref = evictedEntries.remove(hash);
+        image = ref != null ? ref.get() : null;
+        if (image != null) {
+            // 다시 쓰이면 LRU 로 복귀
+            store(hash, image);
+        }
+        return image;
+    }
+    
+    private void store(String hash, BufferedImage image) {
+        entries.put(hash, image);
+        currentBytes += getByteSize(image);
+        
+        Iterator<Map.Entry<String, BufferedImage>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, BufferedImage> entry = it.next();
+            if (entry.getValue() == image) {
+                continue;
+            }
+            currentBytes -= getByteSize(entry.getValue());
+            evictedEntries.put(entry.getKey(), new SoftReference<>(entry.getValue()));
+            it.remove();
+        }
+        
+        evictedEntries.values().removeIf(ref -> ref.get() == null);
+    }
+    
+    static long getByteSize(BufferedImage image) {
+        AnimatedImage animation = AnimatedImage.of(image);
+        if (animation != null) {
+            return animation.getByteSize();
+        }
+        return getRasterByteSize(image);
+    }
+    
+    static long getRasterByteSize(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+    
+    private static String hashContent(byte[] data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return toHex(digest.digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    static String toHex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+    
+    private static class FileHash {
+        private final long lastModified;
+        private final long length;
+        private final String hash;
+        
+        FileHash(long lastModified, long length, String hash) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+}
+
+// ================= ImageProxy 클래스 =================
+// 원본 대신 노드에 올려 두는 축소 이미지 - 원본 파일을 기억해 두고 픽셀이 필요할 때만 디코딩
+class ImageProxy {
+    private static final Map<BufferedImage, ImageProxy> proxies = Collections.synchronizedMap(new WeakHashMap<>());
+    
+    private final File file;
+    private final int width;
+    private final int height;
+    
+    private ImageProxy(File file, int width, int height) {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+    }
+    
+    public static BufferedImage register(BufferedImage preview, File file, int width, int height) {
+        proxies.put(preview, new ImageProxy(file, width, height));
+        return preview;
+    }
+    
+    public static ImageProxy of(BufferedImage image) {
+        return image != null ? proxies.get(image) : null;
+    }
+    
+    public File getFile() { return file; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    
+    // 원본 해상도 이미지 (축소 이미지가 아니면 그대로) - 저장, 해시, 파이썬 워커 입력처럼 픽셀이 필요할 때
+    public static BufferedImage resolve(BufferedImage image) throws IOException {
+        ImageProxy proxy = of(image);
+        if (proxy == null) {
+            return image;
+        }
+        
+        BufferedImage full = ImageCache.getInstance().read(proxy.file);
+        if (full == null) {
+            throw new IOException("이미지를 읽을 수 없습니다: " + proxy.file);
+        }
+        return full;
+    }
+}
+
+// ================= ImageStore 클래스 =================
+// 큰 결과 이미지의 픽셀을 힙 밖(direct 버퍼)에 두는 저장소 - 여러 노드가 같은 이미지를 참조 횟수로 공유
+// 상주 크기가 예산을 넘으면 오래 안 쓴 이미지(참조하는 노드가 없는 것 먼저)를 스왑 파일로 내보내고 메모리 매핑으로 읽음
+// 내보낸 픽셀은 접근할 때 OS 가 다시 읽어 들임 - 이미지 객체는 그대로라 노드 결과 비교와 캐시가 유지됨
+// 스왑 영역은 이미지 객체가 GC 로 회수될 때 반환 (참조 횟수 0 이어도 다른 곳에서 쓰고 있을 수 있음)
+// 미리보기는 프록시, exchange=shared 워커 출력은 이미 매핑 파일이므로 실제로 들어오는 것은 주로 exchange=png 워커 출력
+// 스왑 파일은 비어 있는 영역을 이웃과 합쳐서 다시 쓰고, 끝부분이 비면 그만큼 줄임
+class ImageStore {
+    // 이보다 작은 이미지는 힙에 그대로 둠 (썸네일, 자리 표시 이미지 등)
+    private static final int MIN_ADOPT_BYTES = 512 * 1024;
+    private static ImageStore instance;
+    
+    private final long maxResidentBytes;
+    private final ReferenceQueue<BufferedImage> collected = new ReferenceQueue<>();
+    // 상주 중인 이미지 - 마지막으로 쓴 순서
+    private final LinkedHashMap<Handle, Boolean> residents = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<Handle> handles = new HashSet<>();
+    // 비어 있는 스왑 영역 (시작 위치 -> 크기) - 맞닿은 영역은 하나로 합쳐 둠
+    private final TreeMap<Long, Long> freeRegions = new TreeMap<>();
+    private long residentBytes = 0;
+    private FileChannel swapChannel;
+    private long swapLength = 0;
+    
+    public ImageStore(long maxResidentBytes) {
+        this.maxResidentBytes = maxResidentBytes;
+    }
+    
+    // -Dimage.store.maxMB=상주 예산 (기본은 최대 힙의 절반과 512MB 중 작은 값)
+    public static synchronized ImageStore getInstance() {
+        if (instance == null) {
+            long defaultMegabytes = Math.min(512, Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024));
+            long maxMegabytes = defaultMegabytes;
+            try {
+                maxMegabytes = Long.parseLong(System.getProperty("image.store.maxMB", String.valueOf(defaultMegabytes)));
+            } catch (NumberFormatException e) {
+                System.err.println("image.store.maxMB 설정 오류 - 기본값을 사용합니다");
+            }
+            instance = new ImageStore(maxMegabytes * 1024 * 1024);
+        }
+        return instance;
+    }
+    
+    // 큰 힙 이미지의 픽셀을 저장소로 복사한 이미지 - 작거나, 이미 힙 밖에 있거나(저장소, 파이썬 워커의 매핑 파일),
+    // 애니메이션/프록시이거나, 픽셀 배치를 그대로 옮길 수 없는 이미지는 그대로 돌려줌
+    // 원본과 같은 ColorModel/SampleModel 을 쓰므로 16비트, 회색 이미지도 값과 크기가 그대로 - 수정하면 안 됨
+    public BufferedImage adopt(BufferedImage image) {
+        if (image == null || AnimatedImage.of(image) != null || ImageProxy.of(image) != null) {
+            return image;
+        }
+        
+        SampleModel sampleModel = createPackedSampleModel(image);
+        if (sampleModel == null) {
+            return image;
+        }
+        
+        int elementSize = DataBuffer.getDataTypeSize(sampleModel.getDataType()) / 8;
+        long elementCount = getElementCount(sampleModel);
+        long byteSize = elementCount * elementSize;
+        if (byteSize < MIN_ADOPT_BYTES || byteSize > Integer.MAX_VALUE) {
+            return image;
+        }
+        
+        Handle handle = allocate(byteSize);
+        if (handle == null) {
+            return image;
+        }
+        
+        StoredDataBuffer dataBuffer = new StoredDataBuffer(handle, sampleModel.getDataType(), (int) elementCount);
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, dataBuffer, null);
+        
+        // 한 줄씩 원본 배치의 데이터 요소 그대로 복사 (색 변환 없음)
+        Raster source = image.getRaster();
+        Object row = null;
+        for (int y = 0; y < image.getHeight(); y++) {
+            row = source.getDataElements(0, y, image.getWidth(), 1, row);
+            raster.setDataElements(0, y, image.getWidth(), 1, row);
+        }
+        
+        BufferedImage stored = new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+        
+        synchronized (this) {
+            handle.reference = new ImageReference(stored, handle, collected);
+            handles.add(handle);
+            if (handle.swapOffset < 0) {
+                residents.put(handle, Boolean.TRUE);
+                residentBytes += byteSize;
+                spillIfNeeded();
+            }
+        }
+        return stored;
+    }
+    
+    public static boolean isStored(BufferedImage image) {
+        return image != null && image.getRaster().getDataBuffer() instanceof StoredDataBuffer;
+    }
+    
+    // 힙 배열에 픽셀이 있는 한 뱅크짜리 픽셀 배치면 여백 없이 줄을 이어 붙인 같은 배치 (아니면 null)
+    private static SampleModel createPackedSampleModel(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (!(buffer instanceof DataBufferInt || buffer instanceof DataBufferByte || buffer instanceof DataBufferUShort)
+            || buffer.getNumBanks() != 1) {
+            return null;
+        }
+        
+        int width = image.getWidth();
+        int height = image.getHeight();
+        SampleModel sampleModel = image.getSampleModel();
+        if (sampleModel instanceof SinglePixelPackedSampleModel) {
+            return new SinglePixelPackedSampleModel(sampleModel.getDataType(), width, height,
+                ((SinglePixelPackedSampleModel) sampleModel).getBitMasks());
+        }
+        if (sampleModel instanceof PixelInterleavedSampleModel) {
+            PixelInterleavedSampleModel interleaved = (PixelInterleavedSampleModel) sampleModel;
+            int pixelStride = interleaved.getPixelStride();
+            for (int offset : interleaved.getBandOffsets()) {
+                if (offset >= pixelStride) {
+                    return null;
+                }
+            }
+            return new PixelInterleavedSampleModel(sampleModel.getDataType(), width, height,
+                pixelStride, pixelStride * width, interleaved.getBandOffsets());
+        }
+        return null;
+    }
+    
+    private static long getElementCount(SampleModel sampleModel) {
+        long pixels = (long) sampleModel.getWidth() * sampleModel.getHeight();
+        if (sampleModel instanceof PixelInterleavedSampleModel) {
+            return pixels * ((PixelInterleavedSampleModel) sampleModel).getPixelStride();
+        }
+        return pixels;
+    }
+    
+    // 노드가 이미지를 들고 있는 동안 참조 - 자주 쓰는 이미지는 상주 목록의 뒤로 옮김
+    public synchronized void retain(Collection<BufferedImage> images) {
+        for (BufferedImage image : images) {
+            Handle handle = getHandle(image);
+            if (handle != null) {
+                handle.refCount++;
+                residents.get(handle);
+            }
+        }
+    }
+    
+    public synchronized void release(Collection<BufferedImage> images) {
+        for (BufferedImage image : images) {
+            Handle handle = getHandle(image);
+            if (handle != null && handle.refCount > 0) {
+                handle.refCount--;
+            }
+        }
+    }
+    
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+    
+    private static Handle getHandle(BufferedImage image) {
+        if (!isStored(image)) {
+            return null;
+        }
+        return ((StoredDataBuffer) image.getRaster().getDataBuffer()).handle;
+    }
+    
+    // 새 이미지는 direct 버퍼에 두고 (예산은 등록한 뒤 spillIfNeeded 가 맞춤)
+    // direct 메모리가 모자라면 바로 스왑 파일 영역에 둠
+    private Handle allocate(long byteSize) {
+        synchronized (this) {
+            expungeCollected();
+        }
+        
+        try {
+            return new Handle(ByteBuffer.allocateDirect((int) byteSize), byteSize);
+        } catch (OutOfMemoryError e) {
+            synchronized (this) {
+                try {
+                    SwapRegion region = mapSwapRegion(byteSize);
+                    Handle handle = new Handle(region.buffer, byteSize);
+                    handle.swapOffset = region.offset;
+                    return handle;
+                } catch (IOException ex) {
+                    System.err.println("이미지 스왑 파일 오류: " + ex.getMessage());
+                    return null;
+                }
+            }
+        }
+    }
+    
+    // 오래 안 쓴 것부터, 참조하는 노드가 없는 이미지를 먼저 내보냄
+    private void spillIfNeeded() {
+        for (int pass = 0; pass < 2 && residentBytes > maxResidentBytes; pass++) {
+            Iterator<Handle> it = new ArrayList<>(residents.keySet()).iterator();
+            while (residentBytes > maxResidentBytes && it.hasNext()) {
+                Handle handle = it.next();
+                if (pass == 0 && handle.refCount > 0) {
+                    continue;
+                }
+                try {
+                    spill(handle);
+                } catch (IOException e) {
+                    System.err.println("이미지 스왑 실패: " + e.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+    
+    private void spill(Handle handle) throws IOException {
+        SwapRegion region = mapSwapRegion(handle.byteSize);
+        ByteBuffer source = handle.buffer.duplicate();
+        source.clear();
+        region.buffer.duplicate().put(source);
+        
+        handle.buffer = region.buffer;
+        handle.swapOffset = region.offset;
+        residents.remove(handle);
+        residentBytes -= handle.byteSize;
+    }
+    
+    private SwapRegion mapSwapRegion(long byteSize) throws IOException {
+        if (swapChannel == null) {
+            File swapFile = File.createTempFile("image-swap-", ".tmp");
+            swapFile.deleteOnExit();
+            swapChannel = FileChannel.open(swapFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        
+        long offset = takeFreeRegion(byteSize);
+        if (offset < 0) {
+            offset = swapLength;
+            swapLength += byteSize;
+        }
+        return new SwapRegion(offset, swapChannel.map(FileChannel.MapMode.READ_WRITE, offset, byteSize));
+    }
+    
+    // 들어가는 빈 영역 중 가장 작은 것의 앞부분을 씀 (없으면 -1)
+    private long takeFreeRegion(long byteSize) {
+        Map.Entry<Long, Long> best = null;
+        for (Map.Entry<Long, Long> entry : freeRegions.entrySet()) {
+            if (entry.getValue() >= byteSize && (best == null || entry.getValue() < best.getValue())) {
+                best = entry;
+            }
+        }
+        if (best == null) {
+            return -1;
+        }
+        
+        long offset = best.getKey();
+        long remaining = best.getValue() - byteSize;
+        freeRegions.remove(offset);
+        if (remaining > 0) {
+            freeRegions.put(offset + byteSize, remaining);
+        }
+        return offset;
+    }
+    
+    // 앞뒤 빈 영역과 합치고, 파일 끝까지 비었으면 파일을 줄임
+    private void freeRegion(long offset, long byteSize) {
+        Map.Entry<Long, Long> before = freeRegions.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            offset = before.getKey();
+            byteSize += before.getValue();
+        }
+        Long after = freeRegions.remove(offset + byteSize);
+        if (after != null) {
+            byteSize += after;
+        }
+        
+        if (offset + byteSize < swapLength) {
+            freeRegions.put(offset, byteSize);
+            return;
+        }
+        
+        freeRegions.remove(offset);
+        swapLength = offset;
+        try {
+            swapChannel.truncate(swapLength);
+        } catch (IOException e) {
+            // 줄이지 못해도 다음 영역은 swapLength 부터 이어서 씀
+            System.err.println("이미지 스왑 파일 정리 실패: " + e.getMessage());
+        }
+    }
+    
+    // GC 로 회수된 이미지의 상주 크기와 스왑 영역을 반환
+    private void expungeCollected() {
+        Reference<? extends BufferedImage> reference;
+        while ((reference = collected.poll()) != null) {
+            Handle handle = ((ImageReference) reference).handle;
+            handles.remove(handle);
+            if (residents.remove(handle) != null) {
+                residentBytes -= handle.byteSize;
+            }
+            if (handle.swapOffset >= 0) {
+                freeRegion(handle.swapOffset, handle.byteSize);
+            }
+            handle.buffer = null;
+        }
+    }
+    
+    private static class Handle {
+        private final long byteSize;
+        // direct 버퍼 또는 스왑 파일 매핑 - 내보낼 때 바뀌므로 volatile
+        private volatile ByteBuffer buffer;
+        private long swapOffset = -1;
+        private int refCount = 0;
+        private ImageReference reference;
+        
+        Handle(ByteBuffer buffer, long byteSize) {
+            this.buffer = buffer;
+            this.byteSize = byteSize;
+        }
+    }
+    
+    private static class ImageReference extends WeakReference<BufferedImage> {
+        private final Handle handle;
+        
+        ImageReference(BufferedImage image, Handle handle, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.handle = handle;
+        }
+    }
+    
+    private static class SwapRegion {
+        private final long offset;
+        private final ByteBuffer buffer;
+        
+        SwapRegion(long offset, ByteBuffer buffer) {
+            this.offset = offset;
+            this.buffer = buffer;
+        }
+    }
+    
+    // 원소 하나가 원본 배치의 데이터 요소 하나 (byte/ushort/int, big endian)
+    private static class StoredDataBuffer extends OffHeapDataBuffer {
+        private final Handle handle;
+        
+        StoredDataBuffer(Handle handle, int dataType, int size) {
+            super(dataType, size);
+            this.handle = handle;
+        }
+        
+        @Override
+        protected ByteBuffer getPixelBytes() {
+            ByteBuffer bytes = handle.buffer.duplicate();
+            bytes.clear();
+            return bytes;
+        }
+        
+        @Override
+        public int getElem(int bank, int i) {
+            switch (dataType) {
+                case DataBuffer.TYPE_BYTE:
+                    return handle.buffer.get(i) & 0xff;
+                case DataBuffer.TYPE_USHORT:
+                    return handle.buffer.getShort(i * 2) & 0xffff;
+                default:
+                    return handle.buffer.getInt(i * 4);
+            }
+        }
+        
+        @Override
+        public void setElem(int bank, int i, int val) {
+            switch (dataType) {
+                case DataBuffer.TYPE_BYTE:
+                    handle.buffer.put(i, (byte) val);
+                    break;
+                case DataBuffer.TYPE_USHORT:
+                    handle.buffer.putShort(i * 2, (short) val);
+                    break;
+                default:
+                    handle.buffer.putInt(i * 4, val);
+                    break;
+            }
+        }
+    }
+}
+
+// ================= OffHeapDataBuffer 클래스 =================
+// 힙 밖 바이트 버퍼(저장소, 매핑 파일)를 쓰는 DataBuffer - Java2D 는 이런 버퍼를 원소마다 getElem 으로 읽는 느린 루프로 처리함
+// 픽셀을 많이 읽는 곳(썸네일 단계, 저장, 해시, 워커 입력)은 toHeapImage 로 같은 배치의 힙 이미지를 한 번에 복사해서 씀
+abstract class OffHeapDataBuffer extends DataBuffer {
+    protected OffHeapDataBuffer(int dataType, int size) {
+        super(dataType, size);
+    }
+    
+    // 첫 원소부터 시작하는 버퍼 (다중 바이트 원소는 big endian)
+    protected abstract ByteBuffer getPixelBytes();
+    
+    public static boolean isOffHeap(BufferedImage image) {
+        return image != null && image.getRaster().getDataBuffer() instanceof OffHeapDataBuffer;
+    }
+    
+    // 힙 밖 이미지면 같은 ColorModel/SampleModel 의 힙 복사본, 아니면 그대로
+    public static BufferedImage toHeapImage(BufferedImage image) {
+        if (!isOffHeap(image)) {
+            return image;
+        }
+        
+        OffHeapDataBuffer source = (OffHeapDataBuffer) image.getRaster().getDataBuffer();
+        ByteBuffer bytes = source.getPixelBytes();
+        DataBuffer heap;
+        switch (source.getDataType()) {
+            case DataBuffer.TYPE_BYTE: {
+                byte[] data = new byte[source.getSize()];
+                bytes.get(data);
+                heap = new DataBufferByte(data, data.length);
+                break;
+            }
+            case DataBuffer.TYPE_USHORT: {
+                short[] data = new short[source.getSize()];
+                bytes.order(ByteOrder.BIG_ENDIAN).asShortBuffer().get(data);
+                heap = new DataBufferUShort(data, data.length);
+                break;
+            }
+            default: {
+                int[] data = new int[source.getSize()];
+                bytes.order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(data);
+                heap = new DataBufferInt(data, data.length);
+                break;
+            }
+        }
+        
+        WritableRaster raster = Raster.createWritableRaster(image.getSampleModel(), heap, null);
+        return new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+    }
+}
+
+// ================= ThumbnailPack 클래스 =================
+// 디스크 썸네일 묶음 파일 - 이미지 파일마다 긴 변을 MAX_SIZE 이하로 줄인 픽셀을 이어 붙여 두고 메모리 매핑으로 읽음
+// 시작할 때나 노드를 처음 그릴 때 원본을 디코딩하지 않도록 함 (경로+수정시각+크기가 같을 때만 사용)
+// 레코드: 경로 길이, 경로(UTF-8), 수정시각, 파일 크기, 원본 너비/높이, 썸네일 너비/높이, 투명도, ARGB 픽셀
+class ThumbnailPack {
+    public static final int MAX_SIZE = 256;
+    private static final int MAGIC = 0x52565450; // "RVTP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_FIELDS_SIZE = 8 + 8 + 4 * 5;
+    // 덧붙이기만 하므로 파일이 바뀐 이미지의 예전 기록이 쌓임 - 이 비율을 넘으면 열 때 살아 있는 기록만 남겨 다시 씀
+    private static final double MAX_DEAD_RATIO = 0.5;
+    private static ThumbnailPack instance;
+    
+    private final File file;
+    private final long maxFileLength;
+    private final Map<String, Record> records = new HashMap<>();
+    private FileChannel channel;
+    private long fileLength;
+    // 같은 경로의 뒤 기록에 가려진 기록들의 크기
+    private long deadLength;
+    private boolean opened = false;
+    
+    public ThumbnailPack(File file, long maxFileLength) {
+        this.file = file;
+        this.maxFileLength = maxFileLength;
+    }
+    
+    // -Dthumbnail.pack=파일 (기본 실행 폴더의 .thumbnails.pack), -Dthumbnail.pack.maxMB=최대 크기 (기본 512)
+    public static synchronized ThumbnailPack getInstance() {
+        if (instance == null) {
+            long maxMegabytes = 512;
+            try {
+                maxMegabytes = Long.parseLong(System.getProperty("thumbnail.pack.maxMB", "512"));
+            } catch (NumberFormatException e) {
+                System.err.println("thumbnail.pack.maxMB 설정 오류 - 기본값을 사용합니다");
+            }
+            instance = new ThumbnailPack(new File(System.getProperty("thumbnail.pack", ".thumbnails.pack")),
+                maxMegabytes * 1024 * 1024);
+        }
+        return instance;
+    }
+    
+    // 묶음 파일에 있으면 썸네일을, 없으면 원본을 한 번 디코딩해서 썸네일을 추가 (애니메이션 GIF 는 원본 그대로)
+    public BufferedImage read(File imageFile) throws IOException {
+        File canonicalFile = imageFile.getCanonicalFile();
+        String path = canonicalFile.getPath();
+        long lastModified = canonicalFile.lastModified();
+        long length = canonicalFile.length();
+        
+        synchronized (this) {
+            openIfNeeded();
+            Record record = records.get(path);
+            if (record != null && record.lastModified == lastModified && record.length == length) {
+                BufferedImage preview = record.preview != null ? record.preview.get() : null;
+                if (preview != null) {
+                    return preview;
+                }
+                
+                try {
+                    preview = ImageProxy.register(readPixels(record), canonicalFile, record.width, record.height);
+                    record.preview = new SoftReference<>(preview);
+                    return preview;
+                } catch (IOException e) {
+                    // 읽지 못하면 원본에서 다시 만듦
+                    System.err.println("썸네일 읽기 실패: " + e.getMessage());
+                }
+            }
+        }
+        
+        int[] size = new int[2];
+        BufferedImage decoded = decodeSubsampled(canonicalFile, MAX_SIZE * 2, size);
+        if (decoded == null) {
+            // GIF 이거나 ImageReader 로 크기를 알 수 없으면 원본 전체를 디코딩
+            BufferedImage full = ImageCache.getInstance().read(canonicalFile);
+            if (full == null || AnimatedImage.of(full) != null) {
+                return full;
+            }
+            decoded = full;
+            size[0] = full.getWidth();
+            size[1] = full.getHeight();
+        }
+        
+        double scale = Math.min(1.0, (double) MAX_SIZE / Math.max(size[0], size[1]));
+        BufferedImage thumbnail = ThumbnailCache.createScaledImage(decoded,
+            Math.max(1, (int) Math.round(size[0] * scale)),
+            Math.max(1, (int) Math.round(size[1] * scale)));
+        
+        BufferedImage preview = ImageProxy.register(thumbnail, canonicalFile, size[0], size[1]);
+        synchronized (this) {
+            try {
+                Record record = append(path, lastModified, length, size[0], size[1], thumbnail);
+                record.preview = new SoftReference<>(preview);
+            } catch (IOException e) {
+                // 묶음 파일에 못 써도 이번 실행에서는 그대로 사용
+                System.err.println("썸네일 저장 실패: " + e.getMessage());
+            }
+        }
+        return preview;
+    }
+    
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 닫는 중 오류는 무시
+            }
+            channel = null;
+        }
+    }
+    
+    private void openIfNeeded() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        
+        try {
+            channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fileLength = scan();
+            
+            // 형식이 다르거나 중간에 끊긴 기록은 잘라내고 이어서 씀
+            if (fileLength < HEADER_SIZE) {
+                reset();
+            } else if (channel.size() > fileLength) {
+                channel.truncate(fileLength);
+            }
+            
+            if (fileLength > maxFileLength || deadLength > fileLength * MAX_DEAD_RATIO) {
+                compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("썸네일 묶음 파일을 열 수 없습니다: " + e.getMessage());
+            records.clear();
+            close();
+        }
+    }
+    
+    // 올바른 기록이 끝나는 위치 (같은 경로는 뒤의 기록이 앞을 대신함)
+    // 기록의 머리만 위치를 지정해 읽으므로 파일 크기와 관계없이 매핑하지 않음
+    private long scan() throws IOException {
+        records.clear();
+        deadLength = 0;
+        
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            return 0;
+        }
+        
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            return 0;
+        }
+        
+        long position = HEADER_SIZE;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position + 4 <= size) {
+            lengthBuffer.clear();
+            readFully(lengthBuffer, position);
+            int pathLength = lengthBuffer.getInt(0);
+            if (pathLength <= 0 || pathLength > 65536 || position + 4 + pathLength + RECORD_FIELDS_SIZE > size) {
+                break;
+            }
+            
+            ByteBuffer buffer = ByteBuffer.allocate(pathLength + RECORD_FIELDS_SIZE);
+            readFully(buffer, position + 4);
+            buffer.flip();
+            byte[] pathBytes = new byte[pathLength];
+            buffer.get(pathBytes);
+            Record record = new Record(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt(),
+                buffer.getInt(), buffer.getInt(), buffer.getInt(), position, position + 4 + pathLength + RECORD_FIELDS_SIZE);
+            
+            long end = record.getEnd();
+            if (end > size) {
+                break;
+            }
+            Record previous = records.put(new String(pathBytes, StandardCharsets.UTF_8), record);
+            if (previous != null) {
+                deadLength += previous.getEnd() - previous.start;
+            }
+            position = end;
+        }
+        return position;
+    }
+    
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("썸네일 묶음 파일이 잘렸습니다");
+            }
+        }
+    }
+    
+    private void reset() throws IOException {
+        records.clear();
+        deadLength = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        channel.truncate(0);
+        channel.write(header, 0);
+        fileLength = HEADER_SIZE;
+    }
+    
+    // 살아 있는 기록만 임시 파일로 옮겨 쓰고 바꿔 끼움 - 그래도 최대 크기를 넘으면 비우고 다시 만듦
+    // 이미 돌려준 미리보기 이미지는 메모리에 있으므로 그대로 유지
+    private void compact() throws IOException {
+        Map<String, Record> live = new HashMap<>(records);
+        long liveLength = HEADER_SIZE;
+        for (Record record : live.values()) {
+            liveLength += record.getEnd() - record.start;
+        }
+        if (liveLength > maxFileLength) {
+            System.err.println("썸네일 묶음 파일이 최대 크기를 넘어 다시 만듭니다");
+            reset();
+            return;
+        }
+        
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (FileChannel target = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            target.write(header);
+            
+            // 파일에 있던 순서대로 옮김
+            List<Record> ordered = new ArrayList<>(live.values());
+            ordered.sort(Comparator.comparingLong(record -> record.start));
+            for (Record record : ordered) {
+                long position = record.start;
+                long end = record.getEnd();
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, target);
+                }
+            }
+        }
+        
+        channel.close();
+        ResultWriter.moveAtomically(tempFile, file);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileLength = scan();
+        
+        // 이번 실행에서 이미 만든 미리보기 객체를 이어서 씀
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            Record old = live.get(entry.getKey());
+            if (old != null) {
+                entry.getValue().preview = old.preview;
+            }
+        }
+    }
+    
+    // 긴 변이 minSize 이상 남는 만큼만 픽셀을 건너뛰며 읽음 (ImageReadParam.setSourceSubsampling)
+    // 큰 사진도 원본 전체를 메모리에 올리지 않음 - size 에는 원본 너비, 높이를 채움
+    // 애니메이션일 수 있는 GIF 와 읽을 수 없는 파일은 null
+    static BufferedImage decodeSubsampled(File file, int minSize, int[] size) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                return null;
+            }
+            
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            
+            ImageReader reader = readers.next();
+            try {
+                if ("gif".equalsIgnoreCase(reader.getFormatName())) {
+                    return null;
+                }
+                
+                reader.setInput(input, true, true);
+                size[0] = reader.getWidth(0);
+                size[1] = reader.getHeight(0);
+                
+                int period = Math.max(1, Math.max(size[0], size[1]) / minSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(period, period, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    private Record append(String path, long lastModified, long length, int width, int height,
+                          BufferedImage thumbnail) throws IOException {
+        if (channel == null) {
+            throw new IOException("썸네일 묶음 파일이 열려 있지 않습니다");
+        }
+        
+        int thumbnailWidth = thumbnail.getWidth();
+        int thumbnailHeight = thumbnail.getHeight();
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        int transparency = thumbnail.getColorModel().getTransparency();
+        int recordLength = 4 + pathBytes.length + RECORD_FIELDS_SIZE + thumbnailWidth * thumbnailHeight * 4;
+        
+        if (fileLength + recordLength > maxFileLength) {
+            compact();
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(recordLength);
+        buffer.putInt(pathBytes.length).put(pathBytes)
+            .putLong(lastModified).putLong(length)
+            .putInt(width).putInt(height).putInt(thumbnailWidth).putInt(thumbnailHeight).putInt(transparency);
+        
+        Record record = new Record(lastModified, length, width, height, thumbnailWidth, thumbnailHeight,
+            transparency, fileLength, fileLength + buffer.position());
+        
+        int[] row = new int[thumbnailWidth];
+        for (int y = 0; y < thumbnailHeight; y++) {
+            thumbnail.getRGB(0, y, thumbnailWidth, 1, row, 0, thumbnailWidth);
+            buffer.asIntBuffer().put(row);
+            buffer.position(buffer.position() + thumbnailWidth * 4);
+        }
+        
+        buffer.flip();
+        long position = fileLength;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        fileLength = position;
+        
+        Record previous = records.put(path, record);
+        if (previous != null) {
+            deadLength += previous.getEnd() - previous.start;
+        }
+        return record;
+    }
+    
+    // 필요한 기록의 픽셀 영역만 매핑
+    private BufferedImage readPixels(Record record) throws IOException {
+        int width = record.thumbnailWidth;
+        int height = record.thumbnailHeight;
+        int[] pixels = new int[width * height];
+        channel.map(FileChannel.MapMode.READ_ONLY, record.pixelOffset, (long) pixels.length * 4)
+            .asIntBuffer().get(pixels);
+        
+        int type = record.transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage image = new BufferedImage(width, height, type);
+        image.getRaster().setDataElements(0, 0, width, height, pixels);
+        return ThumbnailCache.toCompatibleImage(image, record.transparency);
+    }
+    
+    private static class Record {
+        private final long lastModified;
+        private final long length;
+        private final int width;
+        private final int height;
+        private final int thumbnailWidth;
+        private final int thumbnailHeight;
+        private final int transparency;
+        private final long start;
+        private final long pixelOffset;
+        // 같은 파일은 같은 이미지 객체로 돌려줘서 노드 결과 비교(ImageSet.sameAs)가 맞도록 함
+        private SoftReference<BufferedImage> preview;
+        
+        Record(long lastModified, long length, int width, int height, int thumbnailWidth, int thumbnailHeight,
+               int transparency, long start, long pixelOffset) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.width = width;
+            this.height = height;
+            this.thumbnailWidth = thumbnailWidth;
+            this.thumbnailHeight = thumbnailHeight;
+            this.transparency = transparency;
+            this.start = start;
+            this.pixelOffset = pixelOffset;
+        }
+        
+        long getEnd() {
+            return pixelOffset + (long) thumbnailWidth * thumbnailHeight * 4;
+        }
+    }
+}
+
+// ================= SpatialGrid 클래스 =================
+// 균일 격자 공간 인덱스 - 사각형이 걸친 셀마다 항목을 등록해 두고 점/영역 질의 시 해당 셀만 확인
+class SpatialGrid<T> {
+    private final int cellSize;
+    private final Map<Long, List<T>> cells = new HashMap<>();
+    private final Map<T, Rectangle> bounds = new HashMap<>();
+    // 모든 셀 목록의 항목 수 합 (한 항목이 여러 셀에 걸치면 여러 번)
+    private long cellEntries = 0;
+    
+    public SpatialGrid(int cellSize) {
+        this.cellSize = cellSize;
+    }
+    
+    public Rectangle getBounds(T item) {
+        return bounds.get(item);
+    }
+    
+    public int size() {
+        return bounds.size();
+    }
+    
+    // 추가 또는 이동 - 걸친 셀 범위가 그대로면 셀 목록은 건드리지 않음
+    public void put(T item, Rectangle rect) {
+        Rectangle newRect = new Rectangle(rect);
+        Rectangle oldRect = bounds.put(item, newRect);
+        
+        if (oldRect != null) {
+            if (sameCells(oldRect, newRect)) {
+                return;
+            }
+            removeFromCells(item, oldRect);
+        }
+        
+        int minCellX = cellOf(newRect.x);
+        int maxCellX = cellOf(newRect.x + newRect.width);
+        int minCellY = cellOf(newRect.y);
+        int maxCellY = cellOf(newRect.y + newRect.height);
+        
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cy = minCellY; cy <= maxCellY; cy++) {
+                cells.computeIfAbsent(cellKey(cx, cy), k -> new ArrayList<>()).add(item);
+                cellEntries++;
+            }
+        }
+    }
+    
+    public void remove(T item) {
+        Rectangle oldRect = bounds.remove(item);
+        if (oldRect != null) {
+            removeFromCells(item, oldRect);
+        }
+    }
+    
+    public void clear() {
+        cells.clear();
+        bounds.clear();
+        cellEntries = 0;
+    }
+    
+    // 점을 포함하는 항목들
+    public List<T> query(Point point) {
+        List<T> cell = cells.get(cellKey(cellOf(point.x), cellOf(point.y)));
+        if (cell == null) {
+            return Collections.emptyList();
+        }
+        
+        List<T> result = new ArrayList<>();
+        for (T item : cell) {
+            if (bounds.get(item).contains(point)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+    
+    // 영역과 겹치는 항목들 (중복 없음)
+    public Set<T> query(Rectangle area) {
+        Set<T> result = new LinkedHashSet<>();
+        
+        int minCellX = cellOf(area.x);
+        int maxCellX = cellOf(area.x + area.width);
+        int minCellY = cellOf(area.y);
+        int maxCellY = cellOf(area.y + area.height);
+        
+        // 크게 축소한 화면처럼 셀들에서 볼 항목 수(셀 수 x 셀당 평균)가 전체 항목 수보다 많으면 한 번 훑는 편이 빠름 (HitTestBenchmark)
+        long areaCells = (long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1);
+        if (areaCells * cellEntries >= (long) bounds.size() * Math.max(1, cells.size())) {
+            for (Map.Entry<T, Rectangle> entry : bounds.entrySet()) {
+                if (entry.getValue().intersects(area)) {
+                    result.add(entry.getKey());
+                }
+            }
+            return result;
+        }
+        
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cy = minCellY; cy <= maxCellY; cy++) {
+                List<T> cell = cells.get(cellKey(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                for (T item : cell) {
+                    if (bounds.get(item).intersects(area)) {
+                        result.add(item);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+    
+    private void removeFromCells(T item, Rectangle rect) {
+        int minCellX = cellOf(rect.x);
+        int maxCellX = cellOf(rect.x + rect.width);
+        int minCellY = cellOf(rect.y);
+        int maxCellY = cellOf(rect.y + rect.height);
+        
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cy = minCellY; cy <= maxCellY; cy++) {
+                Long key = cellKey(cx, cy);
+                List<T> cell = cells.get(key);
+                if (cell != null && cell.remove(item)) {
+                    cellEntries--;
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+    
+    private boolean sameCells(Rectangle a, Rectangle b) {
+        return cellOf(a.x) == cellOf(b.x) && cellOf(a.y) == cellOf(b.y)
+            && cellOf(a.x + a.width) == cellOf(b.x + b.width)
+            && cellOf(a.y + a.height) == cellOf(b.y + b.height);
+    }
+    
+    private int cellOf(int coordinate) {
+        return Math.floorDiv(coordinate, cellSize);
+    }
+    
+    private static Long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+}
+
+// ================= RepaintScheduler 클래스 =================
+// 다시 그리기 요청을 모아 두었다가 정해진 프레임 간격으로 변경된 영역만 다시 그림
+class RepaintScheduler {
+    private final JComponent component;
+    private final Timer timer;
+    private Rectangle dirtyRegion = null;
+    private boolean fullRepaint = false;
+    
+    public RepaintScheduler(JComponent component, int maxFramesPerSecond) {
+        this.component = component;
+        this.timer = new Timer(1000 / maxFramesPerSecond, e -> flush());
+        this.timer.setRepeats(false);
+    }
+    
+    // 컴포넌트 좌표
+    public void markDirty(Rectangle rect) {
+        if (fullRepaint || rect.isEmpty()) {
+            return;
+        }
+        
+        if (dirtyRegion == null) {
+            dirtyRegion = new Rectangle(rect);
+        } else {
+            dirtyRegion.add(rect);
+        }
+        schedule();
+    }
+    
+    public void markAllDirty() {
+        fullRepaint = true;
+        dirtyRegion = null;
+        schedule();
+    }
+    
+    private void schedule() {
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+    
+    private void flush() {
+        if (fullRepaint) {
+            component.repaint();
+        } else if (dirtyRegion != null) {
+            component.repaint(dirtyRegion);
+        }
+        
+        fullRepaint = false;
+        dirtyRegion = null;
+    }
+}
+
+// ================= AnimatedImage 클래스 =================
+// GIF 의 모든 프레임을 합성해 둔 애니메이션 - 노드 목록에는 대표 이미지(poster)가 들어가고
+// of(poster) 로 애니메이션을 찾음 (애니메이션은 대표 이미지의 속성으로 붙어 있어 함께 수거됨)
+class AnimatedImage {
+    private static final String PROPERTY_NAME = "ravendev.animation";
+    
+    private final BufferedImage poster;
+    private final BufferedImage[] frames;
+    private final int[] delays;
+    private final int totalDuration;
+    private final int minDelay;
+    
+    private AnimatedImage(BufferedImage[] frames, int[] delays) {
+        this.frames = frames;
+        this.delays = delays;
+        
+        int total = 0;
+        int min = Integer.MAX_VALUE;
+        for (int delay : delays) {
+            total += delay;
+            min = Math.min(min, delay);
+        }
+        this.totalDuration = total;
+        this.minDelay = min;
+        
+        // 첫 프레임의 복사본에 이 애니메이션을 속성으로 붙여 대표 이미지로 사용
+        // (전역 목록 없이 대표 이미지가 수거되면 프레임들도 같이 수거됨)
+        BufferedImage first = frames[0];
+        Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put(PROPERTY_NAME, this);
+        this.poster = new BufferedImage(first.getColorModel(), first.copyData(null),
+            first.isAlphaPremultiplied(), properties);
+    }
+    
+    public static AnimatedImage of(BufferedImage image) {
+        if (image == null) {
+            return null;
+        }
+        Object animation = image.getProperty(PROPERTY_NAME);
+        return animation instanceof AnimatedImage ? (AnimatedImage) animation : null;
+    }
+    
+    public BufferedImage getPoster() { return poster; }
+    public int getFrameCount() { return frames.length; }
+    public BufferedImage getFrameAt(int index) { return frames[index]; }
+    public int getDelay(int index) { return delays[index]; }
+    public int getMinDelay() { return minDelay; }
+    
+    public BufferedImage getFrame(long timeMillis) {
+        long t = timeMillis % totalDuration;
+        for (int i = 0; i < frames.length; i++) {
+            t -= delays[i];
+            if (t < 0) {
+                return frames[i];
+            }
+        }
+        return frames[frames.length - 1];
+    }
+    
+    public long getByteSize() {
+        long size = ImageCache.getRasterByteSize(poster);
+        for (BufferedImage frame : frames) {
+            size += ImageCache.getRasterByteSize(frame);
+        }
+        return size;
+    }
+    
+    public static boolean isGif(byte[] data) {
+        return data.length > 6 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F' && data[3] == '8';
+    }
+    
+    // 프레임이 하나뿐이면 null
+    public static AnimatedImage read(byte[] data) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+        if (!readers.hasNext()) {
+            return null;
+        }
+        
+        ImageReader reader = readers.next();
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            reader.setInput(input, false);
+            
+            int frameCount = reader.getNumImages(true);
+            if (frameCount <= 1) {
+                return null;
+            }
+            
+            Dimension screenSize = getLogicalScreenSize(reader);
+            BufferedImage canvas = new BufferedImage(screenSize.width, screenSize.height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = canvas.createGraphics();
+            
+            BufferedImage[] frames = new BufferedImage[frameCount];
+            int[] delays = new int[frameCount];
+            
+            for (int i = 0; i < frameCount; i++) {
+                BufferedImage raw = reader.read(i);
+                IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(i)
+                    .getAsTree("javax_imageio_gif_image_1.0");
+                
+                IIOMetadataNode descriptor = getChild(root, "ImageDescriptor");
+                int x = descriptor != null ? Integer.parseInt(descriptor.getAttribute("imageLeftPosition")) : 0;
+                int y = descriptor != null ? Integer.parseInt(descriptor.getAttribute("imageTopPosition")) : 0;
+                
+                IIOMetadataNode control = getChild(root, "GraphicControlExtension");
+                String disposal = control != null ? control.getAttribute("disposalMethod") : "none";
+                int delay = control != null ? Integer.parseInt(control.getAttribute("delayTime")) * 10 : 0;
+                
+                // 지연 시간 0/10ms 는 브라우저들처럼 100ms 로 처리
+                delays[i] = delay <= 10 ? 100 : delay;
+                
+                BufferedImage previous = "restoreToPrevious".equals(disposal) ? copyImage(canvas) : null;
+                
+                g2d.drawImage(raw, x, y, null);
+                // 프레임마다 화면 포맷으로 - 그리는 쪽(EDT)에서 변환하지 않도록 디코딩 스레드에서 한 번만
+                frames[i] = ThumbnailCache.toCompatibleImage(copyImage(canvas), Transparency.TRANSLUCENT);
+                
+                if ("restoreToBackgroundColor".equals(disposal)) {
+                    g2d.setComposite(AlphaComposite.Clear);
+                    g2d.fillRect(x, y, raw.getWidth(), raw.getHeight());
+                    g2d.setComposite(AlphaComposite.SrcOver);
+                } else if (previous != null) {
+                    g2d.setComposite(AlphaComposite.Src);
+                    g2d.drawImage(previous, 0, 0, null);
+                    g2d.setComposite(AlphaComposite.SrcOver);
+                }
+            }
+            g2d.dispose();
+            
+            return new AnimatedImage(frames, delays);
+        } finally {
+            reader.dispose();
+        }
+    }
+    
+    private static Dimension getLogicalScreenSize(ImageReader reader) throws IOException {
+        IIOMetadata streamMetadata = reader.getStreamMetadata();
+        if (streamMetadata != null) {
+            IIOMetadataNode root = (IIOMetadataNode) streamMetadata.getAsTree("javax_imageio_gif_stream_1.0");
+            IIOMetadataNode screen = getChild(root, "LogicalScreenDescriptor");
+            if (screen != null) {
+                int width = Integer.parseInt(screen.getAttribute("logicalScreenWidth"));
+                int height = Integer.parseInt(screen.getAttribute("logicalScreenHeight"));
+                if (width > 0 && height > 0) {
+                    return new Dimension(width, height);
+                }
+            }
+        }
+        return new Dimension(reader.getWidth(0), reader.getHeight(0));
+    }
+    
+    private static IIOMetadataNode getChild(IIOMetadataNode root, String name) {
+        for (int i = 0; i < root.getLength(); i++) {
+            if (root.item(i).getNodeName().equals(name)) {
+                return (IIOMetadataNode) root.item(i);
+            }
+        }
+        return null;
+    }
+    
+    private static BufferedImage copyImage(BufferedImage source) {
+        BufferedImage copy = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = copy.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(source, 0, 0, null);
+        g2d.dispose();
+        return copy;
+    }
+}
+
+// ================= AnimatedSlot 클래스 =================
+// 노드 안에서 애니메이션 썸네일이 차지하는 자리 (노드 위치 기준 상대 좌표)
+class AnimatedSlot {
+    private final AnimatedImage animation;
+    private final Rectangle relativeBounds;
+    
+    public AnimatedSlot(AnimatedImage animation, Rectangle bounds, Point nodeOrigin) {
+        this.animation = animation;
+        this.relativeBounds = new Rectangle(bounds.x - nodeOrigin.x, bounds.y - nodeOrigin.y, bounds.width, bounds.height);
+    }
+    
+    public AnimatedImage getAnimation() { return animation; }
+    
+    public Rectangle getBounds(Rectangle nodeRect) {
+        return new Rectangle(nodeRect.x + relativeBounds.x, nodeRect.y + relativeBounds.y,
+            relativeBounds.width, relativeBounds.height);
+    }
+}
+
+// ================= ImageSet 클래스 =================
+// 노드 사이에 전달되는 이미지와 이름 묶음 (변경 불가)
+class ImageSet {
+    public static final ImageSet EMPTY = new ImageSet(Collections.emptyList(), Collections.emptyList());
+    
+    private final List<BufferedImage> images;
+    private final List<String> names;
+    
+    public ImageSet(List<BufferedImage> images, List<String> names) {
+        this.images = Collections.unmodifiableList(new ArrayList<>(images));
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+    }
+    
+    public List<BufferedImage> getImages() { return images; }
+    public List<String> getNames() { return names; }
+    public int size() { return images.size(); }
+    public BufferedImage getImage(int index) { return images.get(index); }
+    
+    public String getName(int index) {
+        return index < names.size() ? names.get(index) : null;
+    }
+    
+    // 같은 이미지 객체와 같은 이름으로 이루어졌는지 (내용 비교는 하지 않음)
+    public boolean sameAs(List<BufferedImage> otherImages, List<String> otherNames) {
+        if (otherImages.size() != images.size() || !names.equals(otherNames)) {
+            return false;
+        }
+        for (int i = 0; i < images.size(); i++) {
+            if (images.get(i) != otherImages.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public boolean sameAs(ImageSet other) {
+        return sameAs(other.images, other.names);
+    }
+}
+
+// ================= NodeResult 클래스 =================
+// 처리기가 계산한 노드의 입력 표시용 이미지와 출력 이미지
+class NodeResult {
+    private final ImageSet inputs;
+    private final ImageSet outputs;
+    
+    public NodeResult(ImageSet inputs, ImageSet outputs) {
+        this.inputs = inputs;
+        this.outputs = outputs;
+    }
+    
+    public ImageSet getInputs() { return inputs; }
+    public ImageSet getOutputs() { return outputs; }
+    
+    // 노드에 이미 표시된 결과와 같은지
+    public boolean isShownBy(Node node) {
+        return inputs.sameAs(node.getInputImages(), node.getInputImageNames()) &&
+               outputs.sameAs(node.getOutputImages(), node.getOutputImageNames());
+    }
+}
+
+// ================= NodeProcessor 인터페이스 =================
+// 노드 종류별 처리 로직 - 입력 포트는 받을 수 있는 상위 노드 종류로 타입이 정해짐
+// 워커 스레드에서 호출되므로 노드나 캔버스 상태를 건드리면 안 됨
+interface NodeProcessor {
+    NodeType getType();
+    
+    Set<NodeType> getAcceptedInputs();
+    
+    NodeResult process(NodeType sourceType, ImageSet upstream, ProcessContext context) throws Exception;
+    
+    // 결과 저장소 키에 들어가는 처리기 설정과 버전 - null 이면 저장소를 쓰지 않음
+    default String getStoreKey() { return null; }
+}
+
+// ================= ProcessContext 인터페이스 =================
+// 처리 중인 노드에 진행률과 먼저 나온 출력을 알리고, 취소 여부를 확인 (워커 스레드에서 호출)
+interface ProcessContext {
+    ProcessContext NONE = new ProcessContext() {};
+    
+    default void reportProgress(double fraction) {}
+    
+    default void emit(BufferedImage image, String name) {}
+    
+    default boolean isCancelled() { return false; }
+    
+    default void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+}
+
+// ================= FileStepProcessor 클래스 =================
+// 각 스텝의 결과를 images 폴더에 미리 만들어 둔 파일에서 읽어 오는 처리기
+abstract class FileStepProcessor implements NodeProcessor {
+    private final NodeType type;
+    private final Set<NodeType> acceptedInputs;
+    private final String[] outputFiles;
+    
+    protected FileStepProcessor(NodeType type, NodeType acceptedInput, String... outputFiles) {
+        this.type = type;
+        this.acceptedInputs = Collections.unmodifiableSet(EnumSet.of(acceptedInput));
+        this.outputFiles = outputFiles;
+    }
+    
+    @Override
+    public NodeType getType() { return type; }
+    
+    @Override
+    public Set<NodeType> getAcceptedInputs() { return acceptedInputs; }
+    
+    public String[] getOutputFiles() { return outputFiles.clone(); }
+    
+    // 상위 노드 출력 중 이 노드의 입력으로 보여 줄 이미지 선택
+    protected abstract ImageSet selectInputs(ImageSet upstream);
+    
+    @Override
+    public NodeResult process(NodeType sourceType, ImageSet upstream, ProcessContext context) throws Exception {
+        ImageSet inputs = selectInputs(upstream);
+        
+        List<BufferedImage> images = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (String fileName : outputFiles) {
+            context.checkCancelled();
+            
+            BufferedImage image = Node.readPreview(fileName);
+            images.add(image);
+            names.add(fileName);
+            
+            context.emit(image, fileName);
+            context.reportProgress((double) images.size() / outputFiles.length);
+        }
+        
+        return new NodeResult(inputs, new ImageSet(images, names));
+    }
+    
+    protected static ImageSet select(ImageSet upstream, int[] indices, String[] names) {
+        List<BufferedImage> images = new ArrayList<>();
+        List<String> selectedNames = new ArrayList<>();
+        
+        for (int i = 0; i < indices.length; i++) {
+            images.add(upstream.getImage(indices[i]));
+            selectedNames.add(names != null ? names[i] : upstream.getName(indices[i]));
+        }
+        return new ImageSet(images, selectedNames);
+    }
+}
+
+// ================= Step01Processor 클래스 =================
+class Step01Processor extends FileStepProcessor {
+    public Step01Processor() {
+        super(NodeType.STEP01, NodeType.ORIGINAL,
+            "images/debug_full_mask.png",
+            "images/background.png",
+            "images/output_no_bg.png");
+    }
+    
+    @Override
+    protected ImageSet selectInputs(ImageSet upstream) {
+        return upstream;
+    }
+}
+
+// ================= Step02Processor 클래스 =================
+class Step02Processor extends FileStepProcessor {
+    public Step02Processor() {
+        super(NodeType.STEP02, NodeType.STEP01, "images/lama_output.png");
+    }
+    
+    @Override
+    protected ImageSet selectInputs(ImageSet upstream) {
+        if (upstream.size() < 2) {
+            return ImageSet.EMPTY;
+        }
+        return select(upstream, new int[] { 0, 1 },
+            new String[] { "images/debug_full_mask.png", "images/background.png" });
+    }
+}
+
+// ================= Step03Processor 클래스 =================
+class Step03Processor extends FileStepProcessor {
+    public Step03Processor() {
+        super(NodeType.STEP03, NodeType.ORIGINAL, "images/output.png");
+    }
+    
+    @Override
+    protected ImageSet selectInputs(ImageSet upstream) {
+        List<BufferedImage> combinedImages = new ArrayList<>(upstream.getImages());
+        List<String> combinedNames = new ArrayList<>(upstream.getNames());
+        
+        // emoji_rabbit.png 이미지 로드
+        combinedImages.add(loadEmojiImage());
+        combinedNames.add("emoji_rabbit.png");
+        
+        return new ImageSet(combinedImages, combinedNames);
+    }
+    
+    private BufferedImage loadEmojiImage() {
+        String emojiPath = "images/emoji_rabbit.png";
+        
+        // 파일이 없으면 플레이스홀더 생성
+        if (Node.findImageFile(emojiPath) == null) {
+            return Node.createPlaceholderImage("emoji_rabbit.png", Color.YELLOW);
+        }
+        return Node.readPreview(emojiPath);
+    }
+}
+
+// ================= Step04Processor 클래스 =================
+class Step04Processor extends FileStepProcessor {
+    public Step04Processor() {
+        super(NodeType.STEP04, NodeType.STEP01,
+            "images/360_view_001_000deg_from_000deg.png",
+            "images/360_view_002_045deg_from_060deg.png",
+            "images/360_view_003_090deg_from_090deg.png",
+            "images/360_view_004_135deg_from_090deg.png",
+            "images/360_view_005_180deg_from_180deg.png",
+            "images/360_view_006_225deg_from_240deg.png",
+            "images/360_view_007_270deg_from_270deg.png",
+            "images/360_view_008_315deg_from_000deg.png",
+            "images/ultrafast_360.gif");
+    }
+    
+    @Override
+    protected ImageSet selectInputs(ImageSet upstream) {
+        if (upstream.size() < 3) {
+            return ImageSet.EMPTY;
+        }
+        return select(upstream, new int[] { 2 }, new String[] { "images/output_no_bg.png" });
+    }
+}
+
+// ================= Step05Processor 클래스 =================
+class Step05Processor extends FileStepProcessor {
+    public Step05Processor() {
+        super(NodeType.STEP05, NodeType.STEP04, "images/step05_sc_2025-08-11.gif");
+    }
+    
+    @Override
+    protected ImageSet selectInputs(ImageSet upstream) {
+        if (upstream.size() < 8) {
+            return ImageSet.EMPTY;
+        }
+        return select(upstream, new int[] { 0, 1, 2, 3, 4, 5, 6, 7 }, null);
+    }
+}
+
+// ================= NodeProcessorRegistry 클래스 =================
+// NodeType 별 처리기 - 기본 처리기를 등록한 뒤 ServiceLoader 로 찾은 처리기가 있으면 덮어씀
+class NodeProcessorRegistry {
+    private final Map<NodeType, NodeProcessor> processors = new EnumMap<>(NodeType.class);
+    private volatile ResultStore resultStore;
+    
+    public static NodeProcessorRegistry createDefault() {
+        NodeProcessorRegistry registry = new NodeProcessorRegistry();
+        registry.setResultStore(ResultStore.openDefault());
+        registry.register(new Step01Processor());
+        registry.register(new Step02Processor());
+        registry.register(new Step03Processor());
+        registry.register(new Step04Processor());
+        registry.register(new Step05Processor());
+        
+        // python_workers.properties 에 설정된 스텝은 상주 파이썬 워커로 처리
+        File workerConfig = new File(System.getProperty("python.workers", "python_workers.properties"));
+        if (workerConfig.isFile()) {
+            try {
+                for (PythonWorkerPool pool : PythonWorkerPool.load(workerConfig)) {
+                    NodeProcessor fallback = registry.get(pool.getType());
+                    if (fallback instanceof FileStepProcessor) {
+                        registry.register(new PythonStepProcessor((FileStepProcessor) fallback, pool));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("파이썬 워커 설정 로드 실패: " + e.getMessage());
+            }
+        }
+        
+        for (NodeProcessor processor : ServiceLoader.load(NodeProcessor.class)) {
+            registry.register(processor);
+        }
+        return registry;
+    }
+    
+    public synchronized void register(NodeProcessor processor) {
+        processors.put(processor.getType(), processor);
+    }
+    
+    public synchronized NodeProcessor get(NodeType type) {
+        return processors.get(type);
+    }
+    
+    public ResultStore getResultStore() { return resultStore; }
+    public void setResultStore(ResultStore resultStore) { this.resultStore = resultStore; }
+    
+    // 저장소에 같은 입력으로 계산한 결과가 있으면 처리기를 부르지 않음
+    public NodeResult process(NodeProcessor processor, NodeType sourceType, ImageSet upstream,
+                              ProcessContext context) throws Exception {
+        ResultStore store = resultStore;
+        NodeResult result = store == null || processor.getStoreKey() == null
+            ? processor.process(sourceType, upstream, context)
+            : store.process(processor, sourceType, upstream, context);
+        
+        // 큰 결과 이미지는 힙 밖 이미지 저장소로 옮겨서 노드들이 공유
+        ImageSet outputs = result.getOutputs();
+        List<BufferedImage> adopted = new ArrayList<>();
+        for (BufferedImage image : outputs.getImages()) {
+            adopted.add(ImageStore.getInstance().adopt(image));
+        }
+        return outputs.sameAs(adopted, outputs.getNames())
+            ? result
+            : new NodeResult(result.getInputs(), new ImageSet(adopted, outputs.getNames()));
+    }
+    
+    // 노드의 입력 포트로 들어오는 연결 중 처리기가 받을 수 있는 마지막 연결
+    public Connection selectInput(List<Connection> connections, Node node) {
+        return selectInput(connections, node, Node::getType);
+    }
+    
+    // 노드 종류는 types 로 읽음 (그래프 실행은 스냅샷의 종류를 씀)
+    public synchronized Connection selectInput(List<Connection> connections, Node node, Function<Node, NodeType> types) {
+        NodeProcessor processor = processors.get(types.apply(node));
+        if (processor == null) {
+            return null;
+        }
+        
+        Connection selected = null;
+        for (Connection connection : connections) {
+            Node source = connection.getOutputPort().getParentNode();
+            if (connection.getInputPort().getParentNode() == node &&
+                processor.getAcceptedInputs().contains(types.apply(source))) {
+                selected = connection;
+            }
+        }
+        return selected;
+    }
+}
+
+// ================= ResultStore 클래스 =================
+// 스텝 결과를 디스크에 보관 - 키는 처리기 설정/버전과 입력 이미지 내용의 해시
+// 이미지는 내용 해시 이름으로 blobs 폴더에 한 번만 저장되고, entries 폴더의 항목이 이를 참조
+// 전체 크기가 한도를 넘으면 가장 오래 쓰지 않은 항목부터 지움 (항목 파일의 수정 시각 = 마지막 사용 시각)
+class ResultStore {
+    private static final String ENTRY_EXTENSION = ".entry";
+    
+    private final File entriesDir;
+    private final File blobsDir;
+    private final long maxBytes;
+    // 저장과 정리는 한 스레드에서만 - 처리 결과는 기다리지 않고 바로 돌려줌
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "result-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long storedBytes = -1;
+    
+    public ResultStore(File root, long maxBytes) {
+        this.entriesDir = new File(root, "entries");
+        this.blobsDir = new File(root, "blobs");
+        this.maxBytes = maxBytes;
+    }
+    
+    // -Dresult.store=폴더 (기본 .result_store, off 면 사용 안 함), -Dresult.store.maxMB=크기 (기본 2048)
+    public static ResultStore openDefault() {
+        String path = System.getProperty("result.store", ".result_store");
+        if ("off".equalsIgnoreCase(path)) {
+            return null;
+        }
+        
+        long maxMegabytes = 2048;
+        try {
+            maxMegabytes = Long.parseLong(System.getProperty("result.store.maxMB", "2048"));
+        } catch (NumberFormatException e) {
+            System.err.println("result.store.maxMB 설정 오류 - 기본값을 사용합니다");
+        }
+        return new ResultStore(new File(path), maxMegabytes * 1024 * 1024);
+    }
+    
+    public NodeResult process(NodeProcessor processor, NodeType sourceType, ImageSet upstream,
+                              ProcessContext context) throws Exception {
+        String key = computeKey(processor, sourceType, upstream);
+        
+        NodeResult stored = load(key, upstream);
+        if (stored != null) {
+            return stored;
+        }
+        
+        NodeResult result = processor.process(sourceType, upstream, context);
+        if (result.getOutputs().size() > 0) {
+            writer.execute(() -> save(key, upstream, result));
+        }
+        return result;
+    }
+    
+    // 예약된 저장이 모두 끝날 때까지 기다림 (배치 실행 종료 전)
+    public void flush() throws InterruptedException {
+        try {
+            writer.submit(() -> {}).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+    private static String computeKey(NodeProcessor processor, NodeType sourceType, ImageSet upstream) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((processor.getStoreKey() + "\n" + sourceType + "\n").getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < upstream.size(); i++) {
+                BufferedImage image = upstream.getImage(i);
+                String hash = image != null ? ImageHash.of(image) : "-";
+                digest.update((hash + "\t" + upstream.getName(i) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return ImageCache.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    // 항목 파일 한 줄: "in <상위 출력 번호> <이름>" (상위 이미지를 그대로 보여 주는 입력),
+    //                 "in-blob <blob 파일> <이름>", "out <blob 파일> <이름>" (탭으로 구분)
+    private NodeResult load(String key, ImageSet upstream) {
+        File entryFile = new File(entriesDir, key + ENTRY_EXTENSION);
+        if (!entryFile.isFile()) {
+            return null;
+        }
+        
+        try {
+            List<BufferedImage> inputImages = new ArrayList<>();
+            List<String> inputNames = new ArrayList<>();
+            List<BufferedImage> outputImages = new ArrayList<>();
+            List<String> outputNames = new ArrayList<>();
+            
+            for (String line : Files.readAllLines(entryFile.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length < 2) {
+                    continue;
+                }
+                String name = fields.length > 2 ? fields[2] : null;
+                
+                switch (fields[0]) {
+                    case "in":
+                        add(inputImages, inputNames, upstream.getImage(Integer.parseInt(fields[1])), name);
+                        break;
+                    case "in-blob":
+                        add(inputImages, inputNames, readBlob(fields[1]), name);
+                        break;
+                    case "out":
+                        add(outputImages, outputNames, readBlob(fields[1]), name);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            
+            entryFile.setLastModified(System.currentTimeMillis());
+            return new NodeResult(new ImageSet(inputImages, inputNames), new ImageSet(outputImages, outputNames));
+        } catch (IOException | RuntimeException e) {
+            // 정리 중에 지워졌거나 깨진 항목은 다시 계산
+            return null;
+        }
+    }
+    
+    private static void add(List<BufferedImage> images, List<String> names, BufferedImage image, String name) {
+        images.add(image);
+        if (name != null) {
+            names.add(name);
+        }
+    }
+    
+    private BufferedImage readBlob(String fileName) throws IOException {
+        return ImageCache.decode(Files.readAllBytes(new File(blobsDir, fileName).toPath()));
+    }
+    
+    private void save(String key, ImageSet upstream, NodeResult result) {
+        try {
+            ensureLoaded();
+            
+            StringBuilder entry = new StringBuilder();
+            ImageSet inputs = result.getInputs();
+            for (int i = 0; i < inputs.size(); i++) {
+                int upstreamIndex = upstream.getImages().indexOf(inputs.getImage(i));
+                if (upstreamIndex >= 0) {
+                    appendLine(entry, "in", String.valueOf(upstreamIndex), inputs.getName(i));
+                } else {
+                    appendLine(entry, "in-blob", writeBlob(inputs.getImage(i)), inputs.getName(i));
+                }
+            }
+            
+            ImageSet outputs = result.getOutputs();
+            for (int i = 0; i < outputs.size(); i++) {
+                appendLine(entry, "out", writeBlob(outputs.getImage(i)), outputs.getName(i));
+            }
+            
+            File entryFile = new File(entriesDir, key + ENTRY_EXTENSION);
+            File tempFile = File.createTempFile(".entry-", ".tmp", entriesDir);
+            try {
+                Files.write(tempFile.toPath(), entry.toString().getBytes(StandardCharsets.UTF_8));
+                storedBytes += tempFile.length();
+                ResultWriter.moveAtomically(tempFile, entryFile);
+            } finally {
+                if (tempFile.exists()) {
+                    tempFile.delete();
+                }
+            }
+            
+            if (storedBytes > maxBytes) {
+                collectGarbage();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("결과 저장소 기록 실패: " + e.getMessage());
+        }
+    }
+    
+    private static void appendLine(StringBuilder entry, String kind, String value, String name) {
+        entry.append(kind).append('\t').append(value);
+        if (name != null) {
+            entry.append('\t').append(name);
+        }
+        entry.append('\n');
+    }
+    
+    // 같은 내용의 이미지는 한 번만 저장 - 애니메이션은 모든 프레임을 GIF 로
+    private String writeBlob(BufferedImage image) throws IOException {
+        String fileName = ImageHash.of(image) + (AnimatedImage.of(image) != null ? ".gif" : ".png");
+        File blobFile = new File(blobsDir, fileName);
+        if (!blobFile.isFile()) {
+            ResultWriter.write(image, fileName, blobFile);
+            storedBytes += blobFile.length();
+        }
+        return fileName;
+    }
+    
+    private void ensureLoaded() throws IOException {
+        if (storedBytes < 0) {
+            if (!entriesDir.isDirectory() && !entriesDir.mkdirs() || !blobsDir.isDirectory() && !blobsDir.mkdirs()) {
+                throw new IOException("폴더를 만들 수 없습니다: " + entriesDir.getParent());
+            }
+            collectGarbage();
+        }
+    }
+    
+    // 저장 스레드에서만 호출 - 한도의 90% 아래로 내려갈 때까지 오래된 항목부터 지우고, 참조가 없는 blob 도 지움
+    private void collectGarbage() {
+        File[] entryFiles = entriesDir.listFiles((dir, name) -> name.endsWith(ENTRY_EXTENSION));
+        File[] blobFiles = blobsDir.listFiles();
+        if (entryFiles == null || blobFiles == null) {
+            return;
+        }
+        
+        Map<File, Long> lastUsed = new HashMap<>();
+        Map<File, Long> entrySizes = new HashMap<>();
+        for (File entryFile : entryFiles) {
+            lastUsed.put(entryFile, entryFile.lastModified());
+            entrySizes.put(entryFile, entryFile.length());
+        }
+        Arrays.sort(entryFiles, Comparator.comparing(lastUsed::get));
+        
+        Map<File, List<String>> entryBlobs = new HashMap<>();
+        Map<String, Integer> references = new HashMap<>();
+        long total = 0;
+        
+        for (File entryFile : entryFiles) {
+            List<String> blobs = readBlobNames(entryFile);
+            entryBlobs.put(entryFile, blobs);
+            for (String blob : blobs) {
+                references.merge(blob, 1, Integer::sum);
+            }
+            total += entrySizes.get(entryFile);
+        }
+        
+        Map<String, Long> blobSizes = new HashMap<>();
+        for (File blobFile : blobFiles) {
+            if (references.containsKey(blobFile.getName())) {
+                blobSizes.put(blobFile.getName(), blobFile.length());
+                total += blobFile.length();
+            } else {
+                blobFile.delete();
+            }
+        }
+        
+        long target = maxBytes / 10 * 9;
+        for (File entryFile : entryFiles) {
+            if (total <= target) {
+                break;
+            }
+            if (!entryFile.delete()) {
+                continue;
+            }
+            total -= entrySizes.get(entryFile);
+            for (String blob : entryBlobs.get(entryFile)) {
+                if (references.merge(blob, -1, Integer::sum) == 0) {
+                    new File(blobsDir, blob).delete();
+                    total -= blobSizes.getOrDefault(blob, 0L);
+                }
+            }
+        }
+        storedBytes = total;
+    }
+    
+    private static List<String> readBlobNames(File entryFile) {
+        List<String> blobs = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(entryFile.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length >= 2 && (fields[0].equals("out") || fields[0].equals("in-blob"))) {
+                    blobs.add(fields[1]);
+                }
+            }
+        } catch (IOException e) {
+            // 읽을 수 없는 항목은 참조가 없는 것으로 봄
+        }
+        return blobs;
+    }
+}
+
+// ================= GraphExecutionListener 인터페이스 =================
+interface GraphExecutionListener {
+    // execute 를 호출한 스레드에서, 실제로 계산할 노드마다 먼저 호출됨
+    void nodeScheduled(Node node);
+    
+    // 워커 스레드에서 호출됨 - 처리기가 알려 주는 진행률과 먼저 나온 출력
+    void nodeProgress(Node node, double fraction);
+    
+    void nodeOutput(Node node, BufferedImage image, String name);
+    
+    // 워커 스레드에서 호출됨 - true 면 처리기가 중간에 멈춤
+    boolean isCancelled(Node node);
+    
+    // 워커 스레드에서 호출됨
+    void nodeCompleted(Node node, NodeResult result);
+    
+    // 워커 스레드에서 호출됨 (상위 노드가 실패한 경우 포함)
+    void nodeFailed(Node node, Throwable error);
+}
+
+// ================= GraphExecutor 클래스 =================
+// 연결 그래프를 위상 정렬해서 실행 - 서로 의존하지 않는 가지는 ForkJoinPool 에서 병렬로 계산
+class GraphExecutor {
+    private final NodeProcessorRegistry registry;
+    private final ForkJoinPool pool;
+    // 아직 결과가 노드에 반영되지 않은 계산 - 뒤이어 실행되는 그래프가 이어서 기다림
+    private final Map<Node, CompletableFuture<ImageSet>> pending = new ConcurrentHashMap<>();
+    // 노드별 마지막 계산 - 상위 노드 종류와 입력이 같으면 처리기를 다시 부르지 않음
+    // (배치 실행은 이미지마다 노드를 새로 만들므로 약한 참조로 보관)
+    private final Map<Node, Memo> memos = Collections.synchronizedMap(new WeakHashMap<>());
+    
+    public GraphExecutor(NodeProcessorRegistry registry) {
+        this(registry, Runtime.getRuntime().availableProcessors());
+    }
+    
+    public GraphExecutor(NodeProcessorRegistry registry, int parallelism) {
+        this.registry = registry;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+    
+    public NodeProcessorRegistry getRegistry() {
+        return registry;
+    }
+    
+    // 연결, 노드 종류와 출력 이미지는 그래프 스냅샷에서 읽음 - Node 객체에서는 아무것도 읽지 않음
+    // listener.nodeScheduled 는 호출한 스레드에서 불림 (캔버스는 EDT)
+    public CompletableFuture<Void> execute(GraphSnapshot graph, Collection<Node> startNodes,
+                                           GraphExecutionListener listener) {
+        List<Connection> connections = graph.getConnections();
+        List<Node> order = topologicalOrder(connections, startNodes);
+        
+        Map<Node, Connection> selectedInputs = new HashMap<>();
+        for (Node node : order) {
+            Connection input = registry.selectInput(connections, node, graph::getType);
+            if (input != null) {
+                selectedInputs.put(node, input);
+            }
+        }
+        
+        Map<Node, CompletableFuture<ImageSet>> outputs = new HashMap<>();
+        
+        for (Node node : order) {
+            Connection input = selectedInputs.get(node);
+            if (input == null) {
+                // 처리기가 없거나(원본 노드) 받을 수 있는 입력이 없으면 현재 출력을 그대로 전달
+                outputs.put(node, CompletableFuture.completedFuture(graph.getOutputs(node)));
+                continue;
+            }
+            
+            Node source = input.getOutputPort().getParentNode();
+            CompletableFuture<ImageSet> upstream = outputs.get(source);
+            if (upstream == null) {
+                upstream = pending.get(source);
+            }
+            if (upstream == null) {
+                upstream = CompletableFuture.completedFuture(graph.getOutputs(source));
+            }
+            
+            NodeType sourceType = graph.getType(source);
+            NodeProcessor processor = registry.get(graph.getType(node));
+            listener.nodeScheduled(node);
+            
+            CompletableFuture<ImageSet> future = upstream.handleAsync((upstreamImages, error) -> {
+                if (error != null) {
+                    listener.nodeFailed(node, error);
+                    throw new CompletionException(error);
+                }
+                
+                try {
+                    Memo memo = memos.get(node);
+                    if (memo == null || !memo.matches(processor, sourceType, upstreamImages)) {
+                        memo = new Memo(processor, sourceType, upstreamImages,
+                            registry.process(processor, sourceType, upstreamImages, createContext(node, listener)));
+                        memos.put(node, memo);
+                    }
+                    
+                    NodeResult result = memo.result;
+                    listener.nodeCompleted(node, result);
+                    return result.getOutputs();
+                } catch (Exception ex) {
+                    listener.nodeFailed(node, ex);
+                    throw new CompletionException(ex);
+                }
+            }, pool);
+            
+            outputs.put(node, future);
+            pending.put(node, future);
+            // 리스너가 EDT 에 올린 결과 반영 작업 뒤에 제거되도록 함
+            future.whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> pending.remove(node, future)));
+        }
+        
+        return CompletableFuture.allOf(outputs.values().toArray(new CompletableFuture<?>[0]))
+            .handle((ignored, error) -> null);
+    }
+    
+    public void clearMemos() {
+        memos.clear();
+    }
+    
+    private static ProcessContext createContext(Node node, GraphExecutionListener listener) {
+        return new ProcessContext() {
+            @Override
+            public void reportProgress(double fraction) {
+                listener.nodeProgress(node, fraction);
+            }
+            
+            @Override
+            public void emit(BufferedImage image, String name) {
+                listener.nodeOutput(node, image, name);
+            }
+            
+            @Override
+            public boolean isCancelled() {
+                return listener.isCancelled(node);
+            }
+        };
+    }
+    
+    // 시작 노드와 그 하위 노드들을 위상 순서로 (Kahn 알고리즘) - 순환에 걸린 노드는 제외
+    static List<Node> topologicalOrder(List<Connection> connections, Collection<Node> startNodes) {
+        Map<Node, List<Node>> children = new HashMap<>();
+        for (Connection connection : connections) {
+            children.computeIfAbsent(connection.getOutputPort().getParentNode(), k -> new ArrayList<>())
+                .add(connection.getInputPort().getParentNode());
+        }
+        
+        Set<Node> affected = new LinkedHashSet<>();
+        Deque<Node> stack = new ArrayDeque<>(startNodes);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (affected.add(node)) {
+                stack.addAll(children.getOrDefault(node, Collections.emptyList()));
+            }
+        }
+        
+        Map<Node, Integer> inDegree = new HashMap<>();
+        for (Node node : affected) {
+            inDegree.putIfAbsent(node, 0);
+            for (Node child : children.getOrDefault(node, Collections.emptyList())) {
+                inDegree.merge(child, 1, Integer::sum);
+            }
+        }
+        
+        Deque<Node> ready = new ArrayDeque<>();
+        for (Node node : affected) {
+            if (inDegree.get(node) == 0) {
+                ready.add(node);
+            }
+        }
+        
+        List<Node> order = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            Node node = ready.poll();
+            order.add(node);
+            for (Node child : children.getOrDefault(node, Collections.emptyList())) {
+                if (inDegree.merge(child, -1, Integer::sum) == 0) {
+                    ready.add(child);
+                }
+            }
+        }
+        return order;
+    }
+    
+    private static class Memo {
+        private final NodeProcessor processor;
+        private final NodeType sourceType;
+        private final ImageSet upstream;
+        private final NodeResult result;
+        
+        Memo(NodeProcessor processor, NodeType sourceType, ImageSet upstream, NodeResult result) {
+            this.processor = processor;
+            this.sourceType = sourceType;
+            this.upstream = upstream;
+            this.result = result;
+        }
+        
+        boolean matches(NodeProcessor processor, NodeType sourceType, ImageSet upstream) {
+            return this.processor == processor && this.sourceType == sourceType && this.upstream.sameAs(upstream);
+        }
+    }
+}
+
+// ================= GraphDefinition 클래스 =================
+// 저장된 워크플로우 - 한 줄에 하나씩 "node <종류> <x> <y> <제목>", "connect <출력 노드 번호> <입력 노드 번호>"
+class GraphDefinition {
+    public static final String FILE_EXTENSION = "graph";
+    
+    private final List<NodeSpec> nodes = new ArrayList<>();
+    private final List<int[]> connections = new ArrayList<>();
+    
+    public List<NodeSpec> getNodes() { return Collections.unmodifiableList(nodes); }
+    public List<int[]> getConnections() { return Collections.unmodifiableList(connections); }
+    
+    public void addNode(NodeSpec spec) {
+        nodes.add(spec);
+    }
+    
+    public void addConnection(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || fromIndex >= nodes.size() || toIndex < 0 || toIndex >= nodes.size()) {
+            throw new IllegalArgumentException("잘못된 연결: " + fromIndex + " -> " + toIndex);
+        }
+        connections.add(new int[] { fromIndex, toIndex });
+    }
+    
+    public static GraphDefinition fromGraph(List<Node> graphNodes, List<Connection> graphConnections) {
+        GraphDefinition definition = new GraphDefinition();
+        for (Node node : graphNodes) {
+            definition.addNode(new NodeSpec(node.getTitle(), node.getType(), node.getPosition()));
+        }
+        for (Connection connection : graphConnections) {
+            definition.addConnection(graphNodes.indexOf(connection.getOutputPort().getParentNode()),
+                graphNodes.indexOf(connection.getInputPort().getParentNode()));
+        }
+        return definition;
+    }
+    
+    // 캔버스 없이 실행할 노드들 생성 - 원본 노드는 출력 포트만 가짐
+    public List<Node> createNodes() {
+        List<Node> result = new ArrayList<>();
+        for (NodeSpec spec : nodes) {
+            Node node = new Node(spec.getTitle(), new Point(spec.getPosition()), spec.getType());
+            if (spec.getType() != NodeType.ORIGINAL) {
+                node.getInputPorts().add(new NodePort("Input", PortType.INPUT, node));
+            }
+            node.getOutputPorts().add(new NodePort("Output", PortType.OUTPUT, node));
+            result.add(node);
+        }
+        return result;
+    }
+    
+    public List<Connection> createConnections(List<Node> graphNodes) {
+        List<Connection> result = new ArrayList<>();
+        for (int[] connection : connections) {
+            Node fromNode = graphNodes.get(connection[0]);
+            Node toNode = graphNodes.get(connection[1]);
+            if (fromNode.getOutputPorts().isEmpty() || toNode.getInputPorts().isEmpty()) {
+                throw new IllegalArgumentException("연결할 포트가 없습니다: " + fromNode.getTitle() + " -> " + toNode.getTitle());
+            }
+            result.add(new Connection(fromNode.getOutputPorts().get(0), toNode.getInputPorts().get(0)));
+        }
+        return result;
+    }
+    
+    public void save(File file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# 이미지 처리 워크플로우");
+            writer.newLine();
+            for (NodeSpec spec : nodes) {
+                writer.write("node " + spec.getType() + " " + spec.getPosition().x + " " + spec.getPosition().y + " " + spec.getTitle());
+                writer.newLine();
+            }
+            for (int[] connection : connections) {
+                writer.write("connect " + connection[0] + " " + connection[1]);
+                writer.newLine();
+            }
+        }
+    }
+    
+    public static GraphDefinition load(File file) throws IOException {
+        GraphDefinition definition = new GraphDefinition();
+        
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                
+                String[] parts = line.split("\\s+", 5);
+                try {
+                    if (parts[0].equals("node") && parts.length == 5) {
+                        definition.addNode(new NodeSpec(parts[4], NodeType.valueOf(parts[1]),
+                            new Point(Integer.parseInt(parts[2]), Integer.parseInt(parts[3]))));
+                    } else if (parts[0].equals("connect") && parts.length == 3) {
+                        definition.addConnection(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                    } else {
+                        throw new IllegalArgumentException("알 수 없는 항목");
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file.getName() + " " + lineNumber + "번째 줄: " + e.getMessage(), e);
+                }
+            }
+        }
+        return definition;
+    }
+    
+    static class NodeSpec {
+        private final String title;
+        private final NodeType type;
+        private final Point position;
+        
+        public NodeSpec(String title, NodeType type, Point position) {
+            this.title = title;
+            this.type = type;
+            this.position = new Point(position);
+        }
+        
+        public String getTitle() { return title; }
+        public NodeType getType() { return type; }
+        public Point getPosition() { return position; }
+    }
+}
+
+// ================= ResultWriter 클래스 =================
+// 결과 이미지를 "노드제목_출력이름" 으로 저장 (모든 결과 저장과 배치 실행에서 같이 사용)
+class ResultWriter {
+    public static int writeAll(File folder, String nodeTitle, List<BufferedImage> images, List<String> names) throws IOException {
+        int savedCount = 0;
+        
+        for (int i = 0; i < images.size(); i++) {
+            BufferedImage image = images.get(i);
+            if (image != null) {
+                String fileName = getFileName(nodeTitle, names, i);
+                write(image, fileName, new File(folder, nodeTitle + "_" + fileName));
+                savedCount++;
+            }
+        }
+        return savedCount;
+    }
+    
+    public static String getFileName(String nodeTitle, List<String> names, int index) {
+        return index < names.size() 
+            ? names.get(index)
+            : nodeTitle + "_output_" + index + ".png";
+    }
+    
+    // 같은 폴더의 임시 파일에 다 쓴 뒤 이름을 바꿔서, 중간에 실패해도 반쯤 쓰인 파일이 남지 않음
+    public static void write(BufferedImage image, String fileName, File outputFile) throws IOException {
+        image = OffHeapDataBuffer.toHeapImage(ImageProxy.resolve(image));
+        
+        // 출력 이름에 images/ 같은 폴더가 들어 있으면 미리 만들어 둠
+        File parent = outputFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("폴더를 만들 수 없습니다: " + parent);
+        }
+        
+        File tempFile = File.createTempFile(".export-", ".tmp", parent);
+        try {
+            String format = fileName.toLowerCase().endsWith(".gif") ? "gif" : "png";
+            AnimatedImage animation = AnimatedImage.of(image);
+            
+            if (animation != null && format.equals("gif")) {
+                writeAnimatedGif(animation, tempFile);
+            } else if (!ImageIO.write(image, format, tempFile)) {
+                throw new IOException("지원하지 않는 형식입니다: " + format);
+            }
+            
+            moveAtomically(tempFile, outputFile);
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+    
+    static void moveAtomically(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    // 모든 프레임과 지연 시간을 그대로 쓰고 무한 반복 (NETSCAPE2.0 확장)
+    private static void writeAnimatedGif(AnimatedImage animation, File file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            
+            for (int i = 0; i < animation.getFrameCount(); i++) {
+                BufferedImage frame = animation.getFrameAt(i);
+                IIOMetadata metadata = writer.getDefaultImageMetadata(
+                    ImageTypeSpecifier.createFromRenderedImage(frame), null);
+                String formatName = metadata.getNativeMetadataFormatName();
+                IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(formatName);
+                
+                // 프레임은 이미 합성된 전체 화면이므로 매번 지우고 그림
+                IIOMetadataNode control = getOrCreateChild(root, "GraphicControlExtension");
+                control.setAttribute("disposalMethod", "restoreToBackgroundColor");
+                control.setAttribute("userInputFlag", "FALSE");
+                control.setAttribute("transparentColorFlag", "FALSE");
+                control.setAttribute("delayTime", String.valueOf(Math.max(1, animation.getDelay(i) / 10)));
+                control.setAttribute("transparentColorIndex", "0");
+                
+                if (i == 0) {
+                    IIOMetadataNode extensions = getOrCreateChild(root, "ApplicationExtensions");
+                    IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+                    loop.setAttribute("applicationID", "NETSCAPE");
+                    loop.setAttribute("authenticationCode", "2.0");
+                    loop.setUserObject(new byte[] { 1, 0, 0 });
+                    extensions.appendChild(loop);
+                }
+                
+                metadata.setFromTree(formatName, root);
+                writer.writeToSequence(new IIOImage(frame, null, metadata), null);
+            }
+            
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+    }
+    
+    private static IIOMetadataNode getOrCreateChild(IIOMetadataNode root, String name) {
+        for (int i = 0; i < root.getLength(); i++) {
+            if (root.item(i).getNodeName().equals(name)) {
+                return (IIOMetadataNode) root.item(i);
+            }
+        }
+        IIOMetadataNode child = new IIOMetadataNode(name);
+        root.appendChild(child);
+        return child;
+    }
+}
+
+// ================= ResultExporter 클래스 =================
+// 모든 결과 저장 - 코어 수만큼 병렬로 인코딩하고, 지난번 저장 이후 내용이 같은 이미지는 건너뜀
+// 저장한 이미지의 내용 해시는 대상 폴더의 .export_manifest 에 보관
+// 취소된 저장은 목록에 표시해 두고, 다음 저장에서는 그 목록을 믿지 않고 모두 다시 저장
+class ResultExporter {
+    private static final String MANIFEST_NAME = ".export_manifest";
+    private static final String CANCELLED_MARK = "#cancelled";
+    
+    interface Listener {
+        // 작업 스레드에서 호출됨
+        void progress(int done, int total);
+        
+        boolean isCancelled();
+    }
+    
+    static class Entry {
+        private final BufferedImage image;
+        private final String fileName;
+        private final File target;
+        
+        Entry(BufferedImage image, String fileName, File target) {
+            this.image = image;
+            this.fileName = fileName;
+            this.target = target;
+        }
+    }
+    
+    static class Summary {
+        private final AtomicInteger savedCount = new AtomicInteger();
+        private final AtomicInteger skippedCount = new AtomicInteger();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean cancelled = false;
+        
+        public int getSavedCount() { return savedCount.get(); }
+        public int getSkippedCount() { return skippedCount.get(); }
+        public List<String> getErrors() { return errors; }
+        public boolean isCancelled() { return cancelled; }
+    }
+    
+    // 파일 이름은 ResultWriter.writeAll 과 같음
+    public static List<Entry> collect(File folder, String nodeTitle, List<BufferedImage> images, List<String> names) {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < images.size(); i++) {
+            BufferedImage image = images.get(i);
+            if (image != null) {
+                String fileName = ResultWriter.getFileName(nodeTitle, names, i);
+                entries.add(new Entry(image, fileName, new File(folder, nodeTitle + "_" + fileName)));
+            }
+        }
+        return entries;
+    }
+    
+    // 하나가 실패해도 나머지는 계속 저장하고 오류는 모아서 돌려줌
+    public Summary export(File folder, List<Entry> entries, Listener listener) {
+        Summary summary = new Summary();
+        Map<String, String> manifest = loadManifest(folder);
+        AtomicInteger doneCount = new AtomicInteger();
+        
+        int threadCount = Math.max(1, Math.min(entries.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "result-export-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        try {
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (Entry entry : entries) {
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    if (listener.isCancelled()) {
+                        summary.cancelled = true;
+                        return;
+                    }
+                    
+                    try {
+                        String key = getManifestKey(folder, entry.target);
+                        String hash = ImageHash.of(entry.image);
+                        
+                        if (hash.equals(manifest.get(key)) && entry.target.isFile()) {
+                            summary.skippedCount.incrementAndGet();
+                        } else {
+                            ResultWriter.write(entry.image, entry.fileName, entry.target);
+                            manifest.put(key, hash);
+                            summary.savedCount.incrementAndGet();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        summary.errors.add(entry.target.getName() + ": " + e.getMessage());
+                    }
+                    
+                    listener.progress(doneCount.incrementAndGet(), entries.size());
+                }, pool));
+            }
+            
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            pool.shutdown();
+        }
+        
+        // 이미 쓰고 있던 이미지는 끝까지 저장되지만, 취소를 눌렀으면 저장 전체는 취소된 것으로 봄
+        if (listener.isCancelled()) {
+            summary.cancelled = true;
+        }
+        
+        try {
+            saveManifest(folder, manifest, summary.cancelled);
+        } catch (IOException e) {
+            summary.errors.add(MANIFEST_NAME + ": " + e.getMessage());
+        }
+        return summary;
+    }
+    
+    private static String getManifestKey(File folder, File target) {
+        return folder.getAbsoluteFile().toPath().relativize(target.getAbsoluteFile().toPath())
+            .toString().replace(File.separatorChar, '/');
+    }
+    
+    // 한 줄에 "해시<탭>상대 경로" - 취소된 저장이면 첫 줄이 #cancelled
+    private static Map<String, String> loadManifest(File folder) {
+        Map<String, String> manifest = new ConcurrentHashMap<>();
+        File file = new File(folder, MANIFEST_NAME);
+        if (!file.isFile()) {
+            return manifest;
+        }
+        
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(CANCELLED_MARK)) {
+                // 일부만 저장된 결과이므로 건너뛰지 않고 모두 다시 저장
+                return manifest;
+            }
+            
+            for (String line : lines) {
+                int tabIndex = line.indexOf('\t');
+                if (tabIndex > 0) {
+                    manifest.put(line.substring(tabIndex + 1), line.substring(0, tabIndex));
+                }
+            }
+        } catch (IOException e) {
+            // 목록을 못 읽으면 모두 다시 저장
+            manifest.clear();
+        }
+        return manifest;
+    }
+    
+    private static void saveManifest(File folder, Map<String, String> manifest, boolean cancelled) throws IOException {
+        File tempFile = File.createTempFile(".export-", ".tmp", folder);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                if (cancelled) {
+                    writer.write(CANCELLED_MARK);
+                    writer.newLine();
+                }
+                for (Map.Entry<String, String> entry : new TreeMap<>(manifest).entrySet()) {
+                    writer.write(entry.getValue() + "\t" + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            ResultWriter.moveAtomically(tempFile, new File(folder, MANIFEST_NAME));
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+}
+
+// ================= ImageHash 클래스 =================
+// 이미지 픽셀 내용의 SHA-256 (애니메이션이면 모든 프레임과 지연 시간 포함)
+// 노드 이미지는 바꾸지 않고 새로 만들어 쓰므로 같은 객체의 해시는 기억해 둠
+class ImageHash {
+    private static final Map<BufferedImage, String> hashes = Collections.synchronizedMap(new WeakHashMap<>());
+    
+    public static String of(BufferedImage image) {
+        String hash = hashes.get(image);
+        if (hash == null) {
+            hash = compute(image);
+            hashes.put(image, hash);
+        }
+        return hash;
+    }
+    
+    private static String compute(BufferedImage image) {
+        try {
+            image = OffHeapDataBuffer.toHeapImage(ImageProxy.resolve(image));
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            AnimatedImage animation = AnimatedImage.of(image);
+            
+            if (animation == null) {
+                update(digest, image);
+            } else {
+                for (int i = 0; i < animation.getFrameCount(); i++) {
+                    update(digest, animation.getFrameAt(i));
+                    digest.update(ByteBuffer.allocate(4).putInt(animation.getDelay(i)).array());
+                }
+            }
+            return ImageCache.toHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static void update(MessageDigest digest, BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        digest.update(ByteBuffer.allocate(8).putInt(width).putInt(height).array());
+        
+        int[] row = new int[width];
+        ByteBuffer bytes = ByteBuffer.allocate(width * 4);
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            bytes.clear();
+            bytes.asIntBuffer().put(row);
+            digest.update(bytes.array());
+        }
+    }
+}
+
+// ================= BatchRunner 클래스 =================
+// 화면 없이 원본 이미지들을 저장된 워크플로우에 차례로 흘려 보냄
+// 사용법: java BatchRunner <워크플로우 파일> <입력 폴더 | 와일드카드 | @목록파일> <출력 폴더> [작업 스레드 수]
+class BatchRunner {
+    private final GraphDefinition definition;
+    private final File outputFolder;
+    private final int workerCount;
+    private final NodeProcessorRegistry registry;
+    
+    public BatchRunner(GraphDefinition definition, File outputFolder, int workerCount) {
+        this.definition = definition;
+        this.outputFolder = outputFolder;
+        this.workerCount = Math.max(1, workerCount);
+        this.registry = NodeProcessorRegistry.createDefault();
+    }
+    
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        
+        if (args.length < 3) {
+            System.err.println("사용법: java BatchRunner <워크플로우 파일> <입력 폴더 | 와일드카드 | @목록파일> <출력 폴더> [작업 스레드 수]");
+            System.exit(2);
+        }
+        
+        try {
+            int workerCount = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            BatchRunner runner = new BatchRunner(GraphDefinition.load(new File(args[0])), new File(args[2]), workerCount);
+            
+            int failedCount;
+            try (ImageSource source = ImageSource.parse(args[1])) {
+                failedCount = runner.run(source);
+            }
+            System.exit(failedCount == 0 ? 0 : 1);
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("배치 실행 실패: " + e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+    
+    // 노드마다 결과가 나오는 대로 출력 폴더/원본이름/ 아래에 저장 - 메모리에는 큐에 든 이미지만 남음
+    public int run(ImageSource source) throws IOException, InterruptedException {
+        List<Node> nodes = definition.createNodes();
+        List<Connection> connections = definition.createConnections(nodes);
+        
+        StreamingPipeline pipeline = new StreamingPipeline(registry, nodes, connections,
+            workerCount * 2, workerCount);
+        
+        // 읽지 못한 입력도 원본 노드에서 실패로 알려지므로 성공/실패 모두에서 입력 번호를 셈
+        Set<Integer> items = ConcurrentHashMap.newKeySet();
+        Set<Integer> failedItems = ConcurrentHashMap.newKeySet();
+        
+        pipeline.run(source, new StreamingPipeline.Listener() {
+            @Override
+            public void itemCompleted(Node node, StreamItem item, NodeResult result) {
+                items.add(item.getIndex());
+                
+                try {
+                    File imageFolder = new File(outputFolder, getBaseName(item.getSource().getName()));
+                    ResultWriter.writeAll(imageFolder, node.getTitle(),
+                        result.getOutputs().getImages(), result.getOutputs().getNames());
+                } catch (IOException e) {
+                    itemFailed(node, item, e);
+                }
+            }
+            
+            @Override
+            public void itemFailed(Node node, StreamItem item, Throwable error) {
+                items.add(item.getIndex());
+                failedItems.add(item.getIndex());
+                System.err.println("처리 실패: " + item.getSource().getName() + " (" + node.getTitle() + ") - " + error.getMessage());
+            }
+        });
+        
+        ResultStore store = registry.getResultStore();
+        if (store != null) {
+            store.flush();
+        }
+        
+        System.out.println("배치 완료: 성공 " + (items.size() - failedItems.size()) + "개, 실패 " + failedItems.size() + "개");
+        return failedItems.size();
+    }
+    
+    private static String getBaseName(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        return dotIndex > 0 ? fileName.substring(0, dotIndex) : fileName;
+    }
+}
+
+// ================= PaintBenchmark 클래스 =================
+// 노드 이미지를 그리는 비용 측정 - 폴더의 이미지마다 디코딩한 그대로, 저장소(ImageStore)에 넣은 것, 매핑 파일(SharedImageFile)로
+// 읽은 것을 화면 형식으로 바꾸기 전과 후로 나눠 썸네일 만들기와 그리기(원래 크기, 썸네일 크기) 시간을 잼
+// 사용법: java PaintBenchmark [이미지 폴더 (기본 images)] [반복 횟수 (기본 20)]
+class PaintBenchmark {
+    private static final int THUMBNAIL_SIZE = 120;
+    
+    public static void main(String[] args) {
+        File folder = new File(args.length > 0 ? args[0] : "images");
+        int repeat;
+        try {
+            repeat = args.length > 1 ? Math.max(1, Integer.parseInt(args[1])) : 20;
+        } catch (NumberFormatException e) {
+            System.err.println("사용법: java PaintBenchmark [이미지 폴더] [반복 횟수]");
+            System.exit(2);
+            return;
+        }
+        
+        File[] files = folder.listFiles(file -> ImageSource.isImageFile(file.toPath()));
+        if (files == null || files.length == 0) {
+            System.err.println("이미지 파일이 없습니다: " + folder);
+            System.exit(2);
+            return;
+        }
+        Arrays.sort(files);
+        
+        if (GraphicsEnvironment.isHeadless()) {
+            System.out.println("화면이 없어 TYPE_INT_RGB / TYPE_INT_ARGB_PRE 를 화면 형식으로 사용합니다");
+        }
+        System.out.println("이미지, 종류, 형식, 변환 ms, 썸네일 만들기 ms (전/후), 원래 크기 그리기 ms (전/후), 썸네일 크기 그리기 ms (전/후)");
+        
+        try {
+            for (File file : files) {
+                BufferedImage decoded = ImageIO.read(file);
+                if (decoded == null) {
+                    continue;
+                }
+                
+                measure(file.getName(), "디코딩", decoded, repeat);
+                
+                BufferedImage stored = ImageStore.getInstance().adopt(decoded);
+                if (ImageStore.isStored(stored)) {
+                    measure(file.getName(), "저장소", stored, repeat);
+                }
+                
+                File sharedFile = File.createTempFile("paint-benchmark-", SharedImageFile.EXTENSION);
+                try {
+                    SharedImageFile.write(decoded, sharedFile);
+                    measure(file.getName(), "매핑", SharedImageFile.map(sharedFile), repeat);
+                } finally {
+                    if (!sharedFile.delete()) {
+                        sharedFile.deleteOnExit();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("측정 실패: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+    
+    private static void measure(String name, String kind, BufferedImage image, int repeat) {
+        long start = System.nanoTime();
+        BufferedImage converted = toDisplayImage(image);
+        double convertMillis = (System.nanoTime() - start) / 1e6;
+        
+        double scale = (double) THUMBNAIL_SIZE / Math.max(image.getWidth(), image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage target = createTarget(image.getWidth(), image.getHeight());
+        
+        System.out.printf("%s, %s, %s, %.1f, %.2f / %.2f, %.2f / %.2f, %.2f / %.2f%n",
+            name, kind, describe(image), convertMillis,
+            timeThumbnail(image, width, height, repeat), timeThumbnail(converted, width, height, repeat),
+            timeDraw(target, image, image.getWidth(), image.getHeight(), repeat),
+            timeDraw(target, converted, image.getWidth(), image.getHeight(), repeat),
+            timeDraw(target, image, width, height, repeat),
+            timeDraw(target, converted, width, height, repeat));
+    }
+    
+    // 앱에서 원래 크기로 그릴 때 ThumbnailCache 가 만드는 복사본과 같음
+    private static BufferedImage toDisplayImage(BufferedImage image) {
+        BufferedImage heapImage = OffHeapDataBuffer.toHeapImage(image);
+        int transparency = image.getColorModel().getTransparency();
+        if (!GraphicsEnvironment.isHeadless()) {
+            return ThumbnailCache.toCompatibleImage(heapImage, transparency);
+        }
+        
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(),
+            transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.drawImage(heapImage, 0, 0, null);
+        g2d.dispose();
+        return converted;
+    }
+    
+    private static BufferedImage createTarget(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+            .getDefaultConfiguration().createCompatibleImage(width, height);
+    }
+    
+    private static String describe(BufferedImage image) {
+        String buffer = image.getRaster().getDataBuffer().getClass().getSimpleName();
+        return "type " + image.getType() + " " + buffer + " " + image.getWidth() + "x" + image.getHeight();
+    }
+    
+    // 한 번 먼저 돌려서 클래스 로딩과 JIT 를 뺀 평균
+    private static double timeThumbnail(BufferedImage image, int width, int height, int repeat) {
+        ThumbnailCache.createScaledImage(image, width, height);
+        long start = System.nanoTime();
+        for (int i = 0; i < repeat; i++) {
+            ThumbnailCache.createScaledImage(image, width, height);
+        }
+        return (System.nanoTime() - start) / 1e6 / repeat;
+    }
+    
+    // 노드 표면처럼 쌍선형 보간으로 그림
+    private static double timeDraw(BufferedImage target, BufferedImage image, int width, int height, int repeat) {
+        Graphics2D g2d = target.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        try {
+            g2d.drawImage(image, 0, 0, width, height, null);
+            long start = System.nanoTime();
+            for (int i = 0; i < repeat; i++) {
+                g2d.drawImage(image, 0, 0, width, height, null);
+            }
+            Toolkit.getDefaultToolkit().sync();
+            return (System.nanoTime() - start) / 1e6 / repeat;
+        } finally {
+            g2d.dispose();
+        }
+    }
+}
+
+// ================= HitTestBenchmark 클래스 =================
+// NodeCanvas 의 노드 인덱스(SpatialGrid, 셀 256)와 모든 노드를 훑는 방식의 비교 - 화면 없이 노드 수를 바꿔 가며 잼
+// 클릭 지점의 맨 위 노드 찾기, 보이는 영역(배율 1, 0.25) 질의, 드래그 중 위치 갱신 시간
+// 사용법: java HitTestBenchmark [노드 수...] (기본 10 100 1000 10000)
+class HitTestBenchmark {
+    private static final int CELL_SIZE = 256;
+    private static final int QUERY_COUNT = 5000;
+    private static final Dimension VIEWPORT = new Dimension(1400, 900);
+    
+    public static void main(String[] args) {
+        int[] counts = { 10, 100, 1000, 10000 };
+        try {
+            if (args.length > 0) {
+                counts = Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("사용법: java HitTestBenchmark [노드 수...]");
+            System.exit(2);
+        }
+        
+        System.out.println("노드 수, 인덱스 만들기 ms, 클릭 ns (격자/전체), 보이는 영역 x1 ns (격자/전체), 보이는 영역 x0.25 ns (격자/전체), 위치 갱신 ns");
+        // 노드 수마다 JIT 준비용으로 한 번 돌리고 버림 (노드 수에 따라 질의가 타는 경로가 다름)
+        for (int count : counts) {
+            run(count, false);
+            run(count, true);
+        }
+    }
+    
+    private static void run(int count, boolean print) {
+        Random random = new Random(count);
+        List<Node> nodes = new ArrayList<>();
+        Map<Node, Rectangle> bounds = new HashMap<>();
+        
+        // 노드 하나에 260x240 정도의 자리를 주고 흩어 놓음 (실제 워크플로우처럼 조금씩 겹침)
+        // 앞으로 가져온 노드처럼 z 순서는 위치와 관계없이 섞음 (정렬된 목록이면 전체 훑기의 정렬이 거저가 됨)
+        List<Integer> zOrders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            zOrders.add(i);
+        }
+        Collections.shuffle(zOrders, random);
+        
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        for (int i = 0; i < count; i++) {
+            Node node = new Node("Node " + i, new Point(), NodeType.values()[i % NodeType.values().length]);
+            node.setZOrder(zOrders.get(i));
+            Rectangle rect = new Rectangle((i % columns) * 260 + random.nextInt(80) - 40,
+                (i / columns) * 240 + random.nextInt(80) - 40, 200 + random.nextInt(100), 180 + random.nextInt(120));
+            node.setPosition(rect.getLocation());
+            nodes.add(node);
+            bounds.put(node, rect);
+        }
+        Rectangle world = new Rectangle(0, 0, columns * 260, (count / columns + 1) * 240);
+        
+        long start = System.nanoTime();
+        SpatialGrid<Node> grid = new SpatialGrid<>(CELL_SIZE);
+        for (Node node : nodes) {
+            grid.put(node, bounds.get(node));
+        }
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        
+        Point[] points = new Point[QUERY_COUNT];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Point(world.x + random.nextInt(world.width), world.y + random.nextInt(world.height));
+        }
+        
+        long gridHit = time(() -> {
+            for (Point point : points) {
+                topNode(grid.query(point));
+            }
+        }) / QUERY_COUNT;
+        long scanHit = time(() -> {
+            for (Point point : points) {
+                Node top = null;
+                for (Node node : nodes) {
+                    if (bounds.get(node).contains(point) && (top == null || node.getZOrder() > top.getZOrder())) {
+                        top = node;
+                    }
+                }
+            }
+        }) / QUERY_COUNT;
+        
+        long[] visible = new long[4];
+        double[] scales = { 1.0, 0.25 };
+        for (int s = 0; s < scales.length; s++) {
+            int width = (int) (VIEWPORT.width / scales[s]);
+            int height = (int) (VIEWPORT.height / scales[s]);
+            Rectangle[] areas = new Rectangle[QUERY_COUNT / 10];
+            for (int i = 0; i < areas.length; i++) {
+                areas[i] = new Rectangle(points[i].x - width / 2, points[i].y - height / 2, width, height);
+            }
+            
+            visible[s * 2] = time(() -> {
+                for (Rectangle area : areas) {
+                    List<Node> result = new ArrayList<>(grid.query(area));
+                    result.sort(Comparator.comparingInt(Node::getZOrder));
+                }
+            }) / areas.length;
+            visible[s * 2 + 1] = time(() -> {
+                for (Rectangle area : areas) {
+                    List<Node> result = new ArrayList<>();
+                    for (Node node : nodes) {
+                        if (bounds.get(node).intersects(area)) {
+                            result.add(node);
+                        }
+                    }
+                    result.sort(Comparator.comparingInt(Node::getZOrder));
+                }
+            }) / areas.length;
+        }
+        
+        // 드래그처럼 한 노드를 조금씩 옮김
+        long move = time(() -> {
+            for (int i = 0; i < QUERY_COUNT; i++) {
+                Node node = nodes.get(i % nodes.size());
+                Rectangle rect = bounds.get(node);
+                rect.translate(i % 2 == 0 ? 7 : -7, 3 - i % 7);
+                grid.put(node, rect);
+            }
+        }) / QUERY_COUNT;
+        
+        if (print) {
+            System.out.printf("%d, %.2f, %d / %d, %d / %d, %d / %d, %d%n", count, buildMillis,
+                gridHit, scanHit, visible[0], visible[1], visible[2], visible[3], move);
+        }
+    }
+    
+    private static Node topNode(List<Node> candidates) {
+        Node top = null;
+        for (Node node : candidates) {
+            if (top == null || node.getZOrder() > top.getZOrder()) {
+                top = node;
+            }
+        }
+        return top;
+    }
+    
+    // 세 번 돌려서 가장 빠른 값 (GC, JIT 컴파일이 끼어든 회차를 뺌)
+    private static long time(Runnable task) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
+
+// ================= ImageSource 클래스 =================
+// 원본 노드에 차례로 넣을 이미지 파일들 - 폴더, 와일드카드(glob), 파일 목록
+class ImageSource implements Closeable {
+    private static final Set<String> IMAGE_EXTENSIONS =
+        new HashSet<>(Arrays.asList("jpg", "jpeg", "png", "bmp", "gif"));
+    
+    private final Iterator<Path> paths;
+    private final Closeable resource;
+    
+    private ImageSource(Iterator<Path> paths, Closeable resource) {
+        this.paths = paths;
+        this.resource = resource;
+    }
+    
+    public static ImageSource fromFiles(List<File> files) {
+        List<Path> paths = new ArrayList<>();
+        for (File file : files) {
+            paths.add(file.toPath());
+        }
+        return new ImageSource(paths.iterator(), null);
+    }
+    
+    // 폴더 안의 이미지 파일들 (파일 이름을 미리 모으지 않고 읽으면서 넘겨 줌)
+    public static ImageSource fromDirectory(Path directory) throws IOException {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(directory, ImageSource::isImageFile);
+        return new ImageSource(stream.iterator(), stream);
+    }
+    
+    // 예: images/*.png - 와일드카드는 마지막 경로에만 사용할 수 있음
+    public static ImageSource fromGlob(String pattern) throws IOException {
+        Path path = new File(pattern).toPath();
+        Path directory = path.getParent() != null ? path.getParent() : new File(".").toPath();
+        
+        DirectoryStream<Path> stream = Files.newDirectoryStream(directory, path.getFileName().toString());
+        return new ImageSource(stream.iterator(), stream);
+    }
+    
+    // 한 줄에 파일 경로 하나
+    public static ImageSource fromListFile(File listFile) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String line : Files.readAllLines(listFile.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                files.add(new File(line));
+            }
+        }
+        return fromFiles(files);
+    }
+    
+    // "@목록파일", 와일드카드, 폴더, 단일 파일 순으로 해석
+    public static ImageSource parse(String spec) throws IOException {
+        if (spec.startsWith("@")) {
+            return fromListFile(new File(spec.substring(1)));
+        }
+        if (spec.contains("*") || spec.contains("?") || spec.contains("{")) {
+            return fromGlob(spec);
+        }
+        
+        File file = new File(spec);
+        if (file.isDirectory()) {
+            return fromDirectory(file.toPath());
+        }
+        return fromFiles(Collections.singletonList(file));
+    }
+    
+    // 더 이상 없으면 null
+    public File next() {
+        while (paths.hasNext()) {
+            Path path = paths.next();
+            if (Files.isRegularFile(path)) {
+                return path.toFile();
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (resource != null) {
+            resource.close();
+        }
+    }
+    
+    static boolean isImageFile(Path file) {
+        String name = file.getFileName().toString();
+        int dotIndex = name.lastIndexOf('.');
+        return Files.isRegularFile(file) && dotIndex > 0 &&
+               IMAGE_EXTENSIONS.contains(name.substring(dotIndex + 1).toLowerCase());
+    }
+}
+
+// ================= StreamItem 클래스 =================
+// 파이프라인을 흐르는 이미지 하나 - 원본 파일과 직전 노드의 출력
+class StreamItem {
+    static final StreamItem END = new StreamItem(-1, null, ImageSet.EMPTY);
+    
+    private final int index;
+    private final File source;
+    private final ImageSet images;
+    
+    public StreamItem(int index, File source, ImageSet images) {
+        this.index = index;
+        this.source = source;
+        this.images = images;
+    }
+    
+    public int getIndex() { return index; }
+    public File getSource() { return source; }
+    public ImageSet getImages() { return images; }
+    
+    public StreamItem withImages(ImageSet nextImages) {
+        return new StreamItem(index, source, nextImages);
+    }
+}
+
+// ================= StreamingPipeline 클래스 =================
+// 원본 이미지들을 노드 사이의 크기 제한 큐로 흘려 보냄
+// 하위 노드의 큐가 차면 상위 노드가 기다리므로, 메모리는 이미지 수가 아니라 (단계 수 x 큐 크기)에 비례
+class StreamingPipeline {
+    interface Listener {
+        // 각 단계의 작업 스레드에서 호출됨
+        void itemCompleted(Node node, StreamItem item, NodeResult result);
+        
+        void itemFailed(Node node, StreamItem item, Throwable error);
+    }
+    
+    private final NodeProcessorRegistry registry;
+    private final List<Node> nodes;
+    private final List<Connection> connections;
+    private final int queueCapacity;
+    private final int workersPerStage;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final List<Thread> threads = new ArrayList<>();
+    
+    public StreamingPipeline(NodeProcessorRegistry registry, List<Node> nodes, List<Connection> connections,
+                             int queueCapacity, int workersPerStage) {
+        this.registry = registry;
+        this.nodes = new ArrayList<>(nodes);
+        this.connections = new ArrayList<>(connections);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.workersPerStage = Math.max(1, workersPerStage);
+    }
+    
+    // 원본이 끝나고 모든 단계가 비워질 때까지 호출한 스레드에서 기다림
+    public void run(ImageSource source, Listener listener) throws InterruptedException {
+        Map<Node, Stage> stages = new HashMap<>();
+        List<Stage> roots = new ArrayList<>();
+        
+        for (Node node : GraphExecutor.topologicalOrder(connections, nodes)) {
+            Connection input = registry.selectInput(connections, node);
+            if (input != null) {
+                Stage parent = stages.get(input.getOutputPort().getParentNode());
+                if (parent != null) {
+                    Stage stage = new Stage(node, input.getOutputPort().getParentNode().getType(), listener);
+                    parent.children.add(stage);
+                    stages.put(node, stage);
+                }
+            } else if (node.getType() == NodeType.ORIGINAL) {
+                Stage stage = new Stage(node, null, listener);
+                stages.put(node, stage);
+                roots.add(stage);
+            }
+        }
+        
+        for (Stage stage : stages.values()) {
+            if (stage.sourceType != null) {
+                stage.start();
+            }
+        }
+        
+        try {
+            int index = 0;
+            File file;
+            while (!cancelled.get() && (file = source.next()) != null) {
+                readItem(new StreamItem(index++, file, ImageSet.EMPTY), roots, listener);
+            }
+        } finally {
+            for (Stage root : roots) {
+                root.finish();
+            }
+            for (Thread thread : getThreads()) {
+                thread.join();
+            }
+        }
+    }
+    
+    public void cancel() {
+        cancelled.set(true);
+        for (Thread thread : getThreads()) {
+            thread.interrupt();
+        }
+    }
+    
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+    
+    // 원본 노드에는 썸네일 묶음 파일의 축소 이미지(프록시)만 올림 - 생산자 스레드에서 원본 전체를 디코딩하지 않음
+    // 원본 해상도가 필요한 단계(저장, 해시, 파이썬 워커 입력)가 ImageProxy.resolve 로 그때 디코딩
+    private void readItem(StreamItem item, List<Stage> roots, Listener listener) throws InterruptedException {
+        BufferedImage image;
+        try {
+            image = ThumbnailPack.getInstance().read(item.getSource());
+            if (image == null) {
+                throw new IOException("이미지를 읽을 수 없습니다");
+            }
+        } catch (IOException e) {
+            for (Stage root : roots) {
+                listener.itemFailed(root.node, item, e);
+            }
+            return;
+        }
+        
+        ImageSet images = new ImageSet(Collections.singletonList(image),
+            Collections.singletonList(item.getSource().getName()));
+        
+        for (Stage root : roots) {
+            StreamItem rootItem = item.withImages(images);
+            listener.itemCompleted(root.node, rootItem, new NodeResult(ImageSet.EMPTY, images));
+            root.forward(rootItem);
+        }
+    }
+    
+    private synchronized List<Thread> getThreads() {
+        return new ArrayList<>(threads);
+    }
+    
+    private synchronized void addThread(Thread thread) {
+        threads.add(thread);
+    }
+    
+    private class Stage {
+        private final Node node;
+        private final NodeType sourceType;
+        private final Listener listener;
+        private final BlockingQueue<StreamItem> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final List<Stage> children = new ArrayList<>();
+        private final AtomicInteger runningWorkers = new AtomicInteger();
+        
+        Stage(Node node, NodeType sourceType, Listener listener) {
+            this.node = node;
+            this.sourceType = sourceType;
+            this.listener = listener;
+        }
+        
+        void start() {
+            runningWorkers.set(workersPerStage);
+            for (int i = 0; i < workersPerStage; i++) {
+                Thread thread = new Thread(this::work, "stream-" + node.getTitle() + "-" + (i + 1));
+                thread.setDaemon(true);
+                addThread(thread);
+                thread.start();
+            }
+        }
+        
+        // 하위 큐가 차 있으면 빌 때까지 기다림 (취소되면 버림)
+        void forward(StreamItem item) throws InterruptedException {
+            for (Stage child : children) {
+                while (!child.queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    if (cancelled.get()) {
+                        return;
+                    }
+                }
+            }
+        }
+        
+        // 하위 단계에 끝을 알림 - 취소된 경우에는 남은 작업을 버리고 바로 알림
+        void finish() throws InterruptedException {
+            if (cancelled.get()) {
+                for (Stage child : children) {
+                    child.queue.clear();
+                    child.queue.offer(StreamItem.END);
+                }
+            } else {
+                forward(StreamItem.END);
+            }
+        }
+        
+        private void work() {
+            NodeProcessor processor = registry.get(node.getType());
+            ProcessContext context = new ProcessContext() {
+                @Override
+                public boolean isCancelled() {
+                    return cancelled.get();
+                }
+            };
+            
+            try {
+                StreamItem item;
+                while ((item = queue.take()) != StreamItem.END) {
+                    if (cancelled.get()) {
+                        continue;
+                    }
+                    
+                    try {
+                        NodeResult result = registry.process(processor, sourceType, item.getImages(), context);
+                        listener.itemCompleted(node, item, result);
+                        forward(item.withImages(result.getOutputs()));
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        listener.itemFailed(node, item, e);
+                    }
+                }
+                
+                // 같은 단계의 다른 작업 스레드도 끝나도록 되돌려 놓음
+                queue.offer(StreamItem.END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // 마지막 작업 스레드가 하위 단계에 끝을 알림
+                if (runningWorkers.decrementAndGet() == 0) {
+                    try {
+                        finish();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+}
+
+// ================= PythonWorker 클래스 =================
+// 모델을 한 번 로드해 두고 stdin/stdout 줄 단위 프로토콜로 작업을 받는 파이썬 프로세스 (step_worker.py 참고)
+class PythonWorker {
+    // 작업 중간 응답 (PROGRESS, OUTPUT) 을 받음 - 워커 응답 스레드에서 호출됨
+    interface JobListener {
+        void progress(double fraction);
+        
+        void output(File file);
+        
+        boolean isCancelled();
+    }
+    
+    private static final long CANCEL_POLL_MILLIS = 200;
+    
+    private final List<String> command;
+    private final File directory;
+    private final Semaphore permits;
+    private final Map<Long, CompletableFuture<String[]>> requests = new ConcurrentHashMap<>();
+    private final Map<Long, JobListener> jobListeners = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final CompletableFuture<String> ready = new CompletableFuture<>();
+    private Process process;
+    private BufferedWriter writer;
+    private volatile boolean alive = false;
+    
+    public PythonWorker(List<String> command, File directory, int maxConcurrentJobs) {
+        this.command = command;
+        this.directory = directory;
+        this.permits = new Semaphore(Math.max(1, maxConcurrentJobs));
+    }
+    
+    // READY 응답이 올 때까지 기다림 (모델 로드 시간 포함)
+    public void start(long timeoutMillis) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(directory);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        process = builder.start();
+        writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        alive = true;
+        
+        Thread reader = new Thread(this::readResponses, "python-worker-" + process.pid());
+        reader.setDaemon(true);
+        reader.start();
+        
+        try {
+            ready.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            close();
+            throw new IOException("파이썬 워커 시작 실패: " + String.join(" ", command), e);
+        }
+    }
+    
+    public boolean isAlive() {
+        return alive && process.isAlive();
+    }
+    
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+    
+    public boolean ping(long timeoutMillis) {
+        try {
+            send(nextRequestId.incrementAndGet(), "PING").get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    
+    // 워커당 동시 작업 수를 넘으면 자리가 날 때까지 기다림
+    public List<File> runJob(File outputDir, List<File> inputs, long timeoutMillis, JobListener listener)
+            throws IOException, InterruptedException {
+        permits.acquire();
+        long id = nextRequestId.incrementAndGet();
+        try {
+            List<String> fields = new ArrayList<>();
+            fields.add(outputDir.getAbsolutePath());
+            for (File input : inputs) {
+                fields.add(input.getAbsolutePath());
+            }
+            
+            jobListeners.put(id, listener);
+            CompletableFuture<String[]> future = send(id, "JOB", fields.toArray(new String[0]));
+            
+            // 취소되면 워커에 CANCEL 을 보내고 바로 돌아감 (워커는 다음 출력 전에 멈춤)
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            String[] response = null;
+            while (response == null) {
+                if (listener.isCancelled()) {
+                    send(nextRequestId.incrementAndGet(), "CANCEL", String.valueOf(id));
+                    throw new CancellationException();
+                }
+                
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                
+                try {
+                    response = future.get(Math.min(remaining, CANCEL_POLL_MILLIS), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // 취소 여부를 다시 확인
+                }
+            }
+            
+            List<File> outputs = new ArrayList<>();
+            for (int i = 2; i < response.length; i++) {
+                outputs.add(new File(response[i]));
+            }
+            return outputs;
+        } catch (TimeoutException e) {
+            // 응답이 없는 워커는 다시 시작되도록 종료
+            close();
+            throw new IOException("파이썬 워커 응답 시간 초과", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            requests.remove(id);
+            jobListeners.remove(id);
+            permits.release();
+        }
+    }
+    
+    public void close() {
+        alive = false;
+        try {
+            synchronized (this) {
+                writer.write("QUIT\n");
+                writer.flush();
+            }
+        } catch (IOException e) {
+            // 이미 종료된 경우
+        }
+        process.destroy();
+        failAll(new IOException("파이썬 워커가 종료되었습니다"));
+    }
+    
+    private CompletableFuture<String[]> send(long id, String type, String... fields) {
+        CompletableFuture<String[]> future = new CompletableFuture<>();
+        requests.put(id, future);
+        
+        StringBuilder line = new StringBuilder(type).append('\t').append(id);
+        for (String field : fields) {
+            line.append('\t').append(field);
+        }
+        
+        try {
+            synchronized (this) {
+                writer.write(line.append('\n').toString());
+                writer.flush();
+            }
+        } catch (IOException e) {
+            requests.remove(id);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    private void readResponses() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                
+                if (fields[0].equals("READY")) {
+                    ready.complete(fields.length > 1 ? fields[1] : "");
+                } else if (fields[0].equals("PROGRESS") || fields[0].equals("OUTPUT")) {
+                    JobListener listener = fields.length > 2 ? jobListeners.get(Long.parseLong(fields[1])) : null;
+                    if (listener != null && fields[0].equals("PROGRESS")) {
+                        listener.progress(Double.parseDouble(fields[2]));
+                    } else if (listener != null) {
+                        listener.output(new File(fields[2]));
+                    }
+                } else if (fields.length > 1) {
+                    CompletableFuture<String[]> future = requests.remove(Long.parseLong(fields[1]));
+                    if (future == null) {
+                        continue;
+                    }
+                    
+                    if (fields[0].equals("ERROR")) {
+                        future.completeExceptionally(new IOException(fields.length > 2 ? fields[2] : "파이썬 워커 오류"));
+                    } else {
+                        future.complete(fields);
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("파이썬 워커 응답 오류: " + e.getMessage());
+        } finally {
+            // 프로세스가 죽으면 기다리던 작업을 모두 실패 처리 - 풀이 다시 시작함
+            alive = false;
+            ready.completeExceptionally(new IOException("파이썬 워커가 READY 전에 종료되었습니다"));
+            failAll(new IOException("파이썬 워커가 종료되었습니다"));
+        }
+    }
+    
+    private void failAll(IOException error) {
+        for (Long id : new ArrayList<>(requests.keySet())) {
+            CompletableFuture<String[]> future = requests.remove(id);
+            if (future != null) {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
+
+// ================= PythonWorkerPool 클래스 =================
+// 스텝 하나를 맡는 상주 파이썬 워커들 - 처음 작업이 올 때 시작하고, 죽거나 응답이 없으면 다시 시작
+class PythonWorkerPool {
+    // step_worker.py 는 작업을 하나씩 처리함 - 워커에 작업을 더 보내면 대기열에서 기다리는 동안 jobTimeout 이 지나감
+    // 병렬로 돌리려면 workers 를 늘림
+    private static final int JOBS_PER_WORKER = 1;
+    private static final long HEALTH_CHECK_INTERVAL_MILLIS = 10000;
+    private static final long PING_TIMEOUT_MILLIS = 5000;
+    private static ScheduledExecutorService healthChecker;
+    
+    private final NodeType type;
+    private final List<String> command;
+    private final File directory;
+    private final long startTimeoutMillis;
+    private final long jobTimeoutMillis;
+    private final boolean sharedExchange;
+    private final String version;
+    private final PythonWorker[] workers;
+    // 시작 중인 자리 - 같은 자리를 기다리는 다른 작업은 이 시작이 끝나기를 기다림
+    private final Map<Integer, CompletableFuture<PythonWorker>> starting = new HashMap<>();
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private boolean healthCheckScheduled = false;
+    private boolean closed = false;
+    
+    public PythonWorkerPool(NodeType type, List<String> command, File directory, int workerCount,
+                            long startTimeoutMillis, long jobTimeoutMillis, boolean sharedExchange, String version) {
+        this.type = type;
+        this.command = command;
+        this.directory = directory;
+        this.startTimeoutMillis = startTimeoutMillis;
+        this.jobTimeoutMillis = jobTimeoutMillis;
+        this.sharedExchange = sharedExchange;
+        this.version = version;
+        this.workers = new PythonWorker[Math.max(1, workerCount)];
+    }
+    
+    public NodeType getType() { return type; }
+    
+    // true 면 이미지를 PNG 대신 SharedImageFile(.rgba) 로 주고받음
+    public boolean isSharedExchange() { return sharedExchange; }
+    
+    // 모델이나 스크립트를 바꾸면 올려서 결과 저장소의 예전 결과를 쓰지 않게 함
+    public String getVersion() { return version; }
+    
+    public String getCommandLine() { return String.join(" ", command); }
+    
+    // 예: STEP01.command=python step_worker.py --step STEP01 --stub
+    //     STEP01.workers=2, STEP01.directory=., STEP01.startTimeout=120000, STEP01.jobTimeout=600000
+    //     STEP01.exchange=shared (기본) 또는 png, STEP01.version=1
+    // 예전의 STEP01.concurrency 는 1 만 받음 (JOBS_PER_WORKER)
+    public static List<PythonWorkerPool> load(File configFile) throws IOException {
+        Properties properties = new Properties();
+        try (BufferedReader reader = Files.newBufferedReader(configFile.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        
+        File baseDir = configFile.getAbsoluteFile().getParentFile();
+        List<PythonWorkerPool> pools = new ArrayList<>();
+        
+        for (NodeType type : NodeType.values()) {
+            String command = properties.getProperty(type + ".command");
+            if (command == null || command.trim().isEmpty()) {
+                continue;
+            }
+            
+            try {
+                int concurrency = Integer.parseInt(properties.getProperty(type + ".concurrency", "1").trim());
+                if (concurrency != JOBS_PER_WORKER) {
+                    System.err.println(type + ".concurrency=" + concurrency + " 는 무시합니다 - 워커 하나는 작업을 하나씩 처리합니다 (workers 를 늘리세요)");
+                }
+                
+                File directory = new File(baseDir, properties.getProperty(type + ".directory", "."));
+                pools.add(new PythonWorkerPool(type,
+                    Arrays.asList(command.trim().split("\\s+")),
+                    directory,
+                    Integer.parseInt(properties.getProperty(type + ".workers", "1")),
+                    Long.parseLong(properties.getProperty(type + ".startTimeout", "120000")),
+                    Long.parseLong(properties.getProperty(type + ".jobTimeout", "600000")),
+                    !"png".equalsIgnoreCase(properties.getProperty(type + ".exchange", "shared")),
+                    properties.getProperty(type + ".version", "1").trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException(configFile.getName() + ": " + type + " 설정 오류 - " + e.getMessage(), e);
+            }
+        }
+        return pools;
+    }
+    
+    // 작업이 워커 종료로 실패하면 다른 워커에서 한 번 더 시도
+    public List<File> runJob(File outputDir, List<File> inputs, PythonWorker.JobListener listener)
+            throws IOException, InterruptedException {
+        IOException lastError = null;
+        
+        for (int attempt = 0; attempt < 2; attempt++) {
+            PythonWorker worker = acquireWorker();
+            try {
+                return worker.runJob(outputDir, inputs, jobTimeoutMillis, listener);
+            } catch (IOException e) {
+                if (worker.isAlive()) {
+                    throw e;
+                }
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+    
+    public synchronized void close() {
+        closed = true;
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i] != null) {
+                workers[i].close();
+                workers[i] = null;
+            }
+        }
+    }
+    
+    // 살아 있는 워커 중 남은 자리가 가장 많은 것 - 모두 바쁘거나 살아 있는 워커가 없을 때만 빈 자리 하나를 시작
+    // 시작(모델 로드)은 잠금 밖에서 하므로 그동안 다른 작업은 살아 있는 워커를 계속 씀
+    private PythonWorker acquireWorker() throws IOException, InterruptedException {
+        startHealthChecks(this);
+        
+        int startSlot = -1;
+        CompletableFuture<PythonWorker> pendingStart;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException(type + " 파이썬 워커가 종료되었습니다");
+            }
+            
+            PythonWorker best = null;
+            int emptySlot = -1;
+            int start = nextWorker.getAndIncrement();
+            for (int i = 0; i < workers.length; i++) {
+                int slot = Math.floorMod(start + i, workers.length);
+                PythonWorker worker = workers[slot];
+                if (worker != null && worker.isAlive()) {
+                    if (best == null || worker.getAvailablePermits() > best.getAvailablePermits()) {
+                        best = worker;
+                    }
+                } else if (emptySlot < 0 && !starting.containsKey(slot)) {
+                    emptySlot = slot;
+                }
+            }
+            
+            if (best != null && (best.getAvailablePermits() > 0 || emptySlot < 0)) {
+                return best;
+            }
+            if (emptySlot >= 0) {
+                startSlot = emptySlot;
+                pendingStart = new CompletableFuture<>();
+                starting.put(startSlot, pendingStart);
+            } else {
+                // 살아 있는 워커가 없고 나머지는 모두 시작 중
+                pendingStart = starting.values().iterator().next();
+            }
+        }
+        
+        if (startSlot >= 0) {
+            startWorker(startSlot, pendingStart);
+        }
+        
+        try {
+            return pendingStart.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+    
+    // 잠금 밖에서 호출 - 결과(또는 오류)는 future 로 기다리던 작업들에 전달
+    private void startWorker(int slot, CompletableFuture<PythonWorker> future) {
+        PythonWorker old;
+        synchronized (this) {
+            old = workers[slot];
+            workers[slot] = null;
+        }
+        if (old != null) {
+            System.err.println(type + " 파이썬 워커를 다시 시작합니다");
+            old.close();
+        }
+        
+        PythonWorker worker = new PythonWorker(command, directory, JOBS_PER_WORKER);
+        try {
+            worker.start(startTimeoutMillis);
+        } catch (IOException | RuntimeException e) {
+            worker.close();
+            synchronized (this) {
+                starting.remove(slot);
+            }
+            future.completeExceptionally(e);
+            return;
+        }
+        
+        boolean installed;
+        synchronized (this) {
+            starting.remove(slot);
+            installed = !closed;
+            if (installed) {
+                workers[slot] = worker;
+            }
+        }
+        if (installed) {
+            future.complete(worker);
+        } else {
+            // 시작하는 동안 풀이 닫힘
+            worker.close();
+            future.completeExceptionally(new IOException(type + " 파이썬 워커가 종료되었습니다"));
+        }
+    }
+    
+    // 응답이 없는 워커는 닫고 자리만 비움 - 다시 시작은 다음 작업이 acquireWorker 에서 함
+    // (점검 스레드는 모든 풀이 같이 쓰므로 여기서 모델 로드를 기다리지 않음)
+    private void checkHealth() {
+        PythonWorker[] current;
+        synchronized (this) {
+            current = workers.clone();
+        }
+        
+        for (int slot = 0; slot < current.length; slot++) {
+            PythonWorker worker = current[slot];
+            if (worker != null && (!worker.isAlive() || !worker.ping(PING_TIMEOUT_MILLIS))) {
+                synchronized (this) {
+                    if (workers[slot] != worker) {
+                        continue;
+                    }
+                    workers[slot] = null;
+                }
+                System.err.println(type + " 파이썬 워커가 응답하지 않아 종료합니다");
+                worker.close();
+            }
+        }
+    }
+    
+    private static synchronized void startHealthChecks(PythonWorkerPool pool) {
+        if (healthChecker == null) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "python-worker-health");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (!pool.healthCheckScheduled) {
+            pool.healthCheckScheduled = true;
+            healthChecker.scheduleWithFixedDelay(pool::checkHealth,
+                HEALTH_CHECK_INTERVAL_MILLIS, HEALTH_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
+
+// ================= PythonWorkerCheck 클래스 =================
+// step_worker.py --stub 으로 워커 풀을 띄워 프로토콜을 확인 - OK 응답(출력 파일, 진행률), ERROR 응답 뒤에도 워커 유지,
+// 작업 시간 초과 시 워커를 다시 시작해 한 번 더 시도한 뒤 실패하는지
+// 사용법: java PythonWorkerCheck [파이썬 실행 파일 (기본 python)] [step_worker.py 경로 (기본 step_worker.py)]
+class PythonWorkerCheck {
+    public static void main(String[] args) {
+        String python = args.length > 0 ? args[0] : "python";
+        File script = new File(args.length > 1 ? args[1] : "step_worker.py").getAbsoluteFile();
+        
+        Path workDir = null;
+        int status = 0;
+        try {
+            workDir = Files.createTempDirectory("worker-check");
+            File input = workDir.resolve("input.png").toFile();
+            ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB), "png", input);
+            
+            checkOkAndError(python, script, workDir, input);
+            checkTimeout(python, script, workDir, input);
+            System.out.println("파이썬 워커 확인 완료");
+        } catch (Exception e) {
+            System.err.println("파이썬 워커 확인 실패: " + e.getMessage());
+            status = 1;
+        } finally {
+            if (workDir != null) {
+                deleteRecursively(workDir.toFile());
+            }
+        }
+        System.exit(status);
+    }
+    
+    private static void checkOkAndError(String python, File script, Path workDir, File input)
+            throws IOException, InterruptedException {
+        PythonWorkerPool pool = createPool(python, script, 0, 10000);
+        try {
+            List<File> outputs = new ArrayList<>();
+            double[] progress = { 0 };
+            List<File> result = pool.runJob(workDir.resolve("ok").toFile(), Collections.singletonList(input),
+                createListener(outputs, progress));
+            
+            check(result.size() == 1 && result.get(0).getName().equals("lama_output.png"),
+                "OK 응답의 출력 파일 목록이 다릅니다: " + result);
+            check(result.get(0).isFile(), "출력 파일이 없습니다: " + result.get(0));
+            check(outputs.equals(result), "OUTPUT 응답이 OK 응답과 다릅니다: " + outputs);
+            check(progress[0] == 1.0, "진행률이 1 까지 오지 않았습니다: " + progress[0]);
+            System.out.println("OK 응답 확인");
+            
+            try {
+                pool.runJob(workDir.resolve("error").toFile(),
+                    Collections.singletonList(workDir.resolve("missing.png").toFile()), createListener(outputs, progress));
+                throw new IllegalStateException("없는 입력 파일로 작업이 성공했습니다");
+            } catch (IOException e) {
+                // 워커가 보낸 ERROR 메시지가 그대로 전달됨
+                check(!(e.getCause() instanceof TimeoutException), "ERROR 대신 시간 초과로 실패했습니다");
+            }
+            
+            result = pool.runJob(workDir.resolve("after-error").toFile(), Collections.singletonList(input),
+                createListener(new ArrayList<>(), progress));
+            check(result.size() == 1, "ERROR 뒤의 작업이 실패했습니다");
+            System.out.println("ERROR 응답 확인");
+        } finally {
+            pool.close();
+        }
+    }
+    
+    private static void checkTimeout(String python, File script, Path workDir, File input)
+            throws IOException, InterruptedException {
+        PythonWorkerPool pool = createPool(python, script, 30, 1000);
+        try {
+            long start = System.currentTimeMillis();
+            try {
+                pool.runJob(workDir.resolve("timeout").toFile(), Collections.singletonList(input),
+                    createListener(new ArrayList<>(), new double[1]));
+                throw new IllegalStateException("시간 초과가 나지 않았습니다");
+            } catch (IOException e) {
+                check(e.getCause() instanceof TimeoutException, "시간 초과가 아닌 오류입니다: " + e.getMessage());
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            check(elapsed < 10000, "시간 초과까지 너무 오래 걸렸습니다: " + elapsed + "ms");
+            System.out.println("시간 초과 확인 (" + elapsed + "ms)");
+        } finally {
+            pool.close();
+        }
+    }
+    
+    private static PythonWorkerPool createPool(String python, File script, int jobSeconds, long jobTimeoutMillis) {
+        List<String> command = Arrays.asList(python, script.getPath(), "--step", "STEP02", "--stub",
+            "--job-seconds", String.valueOf(jobSeconds));
+        return new PythonWorkerPool(NodeType.STEP02, command, script.getParentFile(), 1,
+            30000, jobTimeoutMillis, false, "check");
+    }
+    
+    private static PythonWorker.JobListener createListener(List<File> outputs, double[] progress) {
+        return new PythonWorker.JobListener() {
+            @Override
+            public void progress(double fraction) {
+                progress[0] = fraction;
+            }
+            
+            @Override
+            public void output(File file) {
+                outputs.add(file);
+            }
+            
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        };
+    }
+    
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+    
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
+
+// ================= PythonStepProcessor 클래스 =================
+// 입력 선택은 기본 처리기와 같고, 결과는 상주 파이썬 워커가 만듦
+// .rgba 출력은 작업 폴더의 파일을 매핑한 채로 노드 결과가 되므로, 폴더는 매핑한 이미지가 모두 GC 로 회수된 뒤에 지움
+class PythonStepProcessor implements NodeProcessor {
+    private static final ReferenceQueue<BufferedImage> releasedOutputs = new ReferenceQueue<>();
+    // 회수를 기다리는 출력 이미지 참조 (참조 객체가 먼저 회수되지 않도록 들고 있음)
+    private static final Set<OutputReference> outputReferences = ConcurrentHashMap.newKeySet();
+    // 지우려 했지만 아직 매핑이 풀리지 않아 남은 폴더 (Windows) - 정리 스레드가 잠시 뒤 다시 시도
+    private static final Queue<File> undeletedDirs = new ConcurrentLinkedQueue<>();
+    private static final int MAX_DELETE_ATTEMPTS = 30;
+    private static Thread cleaner;
+    
+    private final FileStepProcessor fallback;
+    private final PythonWorkerPool pool;
+    
+    public PythonStepProcessor(FileStepProcessor fallback, PythonWorkerPool pool) {
+        this.fallback = fallback;
+        this.pool = pool;
+    }
+    
+    @Override
+    public NodeType getType() { return fallback.getType(); }
+    
+    @Override
+    public Set<NodeType> getAcceptedInputs() { return fallback.getAcceptedInputs(); }
+    
+    @Override
+    public String getStoreKey() {
+        return getType() + " " + pool.getCommandLine() + " v" + pool.getVersion();
+    }
+    
+    @Override
+    public NodeResult process(NodeType sourceType, ImageSet upstream, ProcessContext context) throws Exception {
+        ImageSet inputs = fallback.selectInputs(upstream);
+        if (inputs.size() == 0) {
+            return new NodeResult(inputs, ImageSet.EMPTY);
+        }
+        
+        Path jobDir = Files.createTempDirectory("step-job");
+        List<BufferedImage> mappedOutputs = Collections.synchronizedList(new ArrayList<>());
+        try {
+            List<File> inputFiles = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                BufferedImage input = OffHeapDataBuffer.toHeapImage(ImageProxy.resolve(inputs.getImage(i)));
+                if (pool.isSharedExchange()) {
+                    File inputFile = jobDir.resolve("input_" + i + SharedImageFile.EXTENSION).toFile();
+                    SharedImageFile.write(input, inputFile);
+                    inputFiles.add(inputFile);
+                } else {
+                    File inputFile = jobDir.resolve("input_" + i + ".png").toFile();
+                    ImageIO.write(input, "png", inputFile);
+                    inputFiles.add(inputFile);
+                }
+            }
+            
+            // 워커가 OUTPUT 으로 알려 주는 대로 읽어서 노드에 먼저 보냄
+            Map<File, BufferedImage> decoded = new ConcurrentHashMap<>();
+            List<File> outputFiles = pool.runJob(jobDir.resolve("output").toFile(), inputFiles,
+                new PythonWorker.JobListener() {
+                    @Override
+                    public void progress(double fraction) {
+                        context.reportProgress(fraction);
+                    }
+                    
+                    @Override
+                    public void output(File file) {
+                        try {
+                            BufferedImage image = readOutput(file, mappedOutputs);
+                            decoded.put(file, image);
+                            context.emit(image, getOutputName(file));
+                        } catch (IOException e) {
+                            System.err.println("출력 이미지 읽기 실패: " + file + " - " + e.getMessage());
+                        }
+                    }
+                    
+                    @Override
+                    public boolean isCancelled() {
+                        return context.isCancelled();
+                    }
+                });
+            
+            List<BufferedImage> images = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (File outputFile : outputFiles) {
+                BufferedImage image = decoded.get(outputFile);
+                images.add(image != null ? image : readOutput(outputFile, mappedOutputs));
+                names.add(getOutputName(outputFile));
+            }
+            
+            return new NodeResult(inputs, new ImageSet(images, names));
+        } finally {
+            releaseJobDirectory(jobDir.toFile(), mappedOutputs);
+        }
+    }
+    
+    // .rgba 출력은 복사 없이 매핑만 함 - PNG 는 최종 저장할 때만 씀
+    private static BufferedImage readOutput(File file, List<BufferedImage> mappedOutputs) throws IOException {
+        if (SharedImageFile.isSharedImageFile(file)) {
+            BufferedImage image = SharedImageFile.map(file);
+            mappedOutputs.add(image);
+            return image;
+        }
+        return ImageCache.decode(Files.readAllBytes(file.toPath()));
+    }
+    
+    // 매핑한 출력이 없으면 바로 지우고, 있으면 모두 회수된 뒤 정리 스레드가 지움
+    private static void releaseJobDirectory(File jobDir, List<BufferedImage> mappedOutputs) {
+        synchronized (mappedOutputs) {
+            if (mappedOutputs.isEmpty()) {
+                if (deleteRecursively(jobDir)) {
+                    return;
+                }
+                // 입력 .rgba 를 쓸 때 만든 매핑이 아직 남아 있음
+                undeletedDirs.add(jobDir);
+            } else {
+                JobDirectory directory = new JobDirectory(jobDir, mappedOutputs.size());
+                for (BufferedImage image : mappedOutputs) {
+                    outputReferences.add(new OutputReference(image, directory, releasedOutputs));
+                }
+            }
+        }
+        startCleanerIfNeeded();
+    }
+    
+    private static synchronized void startCleanerIfNeeded() {
+        if (cleaner != null) {
+            return;
+        }
+        cleaner = new Thread(PythonStepProcessor::cleanJobDirectories, "step-job-cleaner");
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+    
+    // 매핑 해제는 버퍼가 GC 된 뒤에 일어나므로 (Windows 에서는 그 전에 지울 수 없음) 못 지운 폴더는 1초마다 다시 시도
+    // 끝내 못 지운 폴더는 종료할 때 지우도록 넘김
+    private static void cleanJobDirectories() {
+        Map<File, Integer> attempts = new LinkedHashMap<>();
+        while (true) {
+            try {
+                Reference<? extends BufferedImage> reference =
+                    releasedOutputs.remove(attempts.isEmpty() && undeletedDirs.isEmpty() ? 0 : 1000);
+                if (reference != null) {
+                    outputReferences.remove(reference);
+                    JobDirectory directory = ((OutputReference) reference).directory;
+                    if (--directory.liveOutputs == 0) {
+                        attempts.put(directory.dir, 0);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            
+            File dir;
+            while ((dir = undeletedDirs.poll()) != null) {
+                attempts.putIfAbsent(dir, 0);
+            }
+            
+            Iterator<Map.Entry<File, Integer>> it = attempts.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<File, Integer> entry = it.next();
+                if (deleteRecursively(entry.getKey())) {
+                    it.remove();
+                } else if (entry.getValue() + 1 >= MAX_DELETE_ATTEMPTS) {
+                    deleteOnExit(entry.getKey());
+                    it.remove();
+                } else {
+                    entry.setValue(entry.getValue() + 1);
+                }
+            }
+        }
+    }
+    
+    // 기본 처리기의 출력과 파일 이름(확장자 제외)이 같으면 그 이름을 써서 저장 파일 이름을 맞춤
+    private String getOutputName(File file) {
+        String baseName = getBaseName(file.getName());
+        for (String name : fallback.getOutputFiles()) {
+            if (getBaseName(new File(name).getName()).equals(baseName)) {
+                return name;
+            }
+        }
+        return "images/" + baseName + ".png";
+    }
+    
+    private static String getBaseName(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        return dotIndex > 0 ? fileName.substring(0, dotIndex) : fileName;
+    }
+    
+    private static boolean deleteRecursively(File file) {
+        boolean deleted = true;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleted &= deleteRecursively(child);
+            }
+        }
+        return (file.delete() || !file.exists()) && deleted;
+    }
+    
+    // 폴더가 파일보다 먼저 등록되어야 종료할 때 파일부터 지워짐
+    private static void deleteOnExit(File file) {
+        file.deleteOnExit();
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteOnExit(child);
+            }
+        }
+    }
+    
+    private static class JobDirectory {
+        private final File dir;
+        // 정리 스레드에서만 줄임
+        private int liveOutputs;
+        
+        JobDirectory(File dir, int liveOutputs) {
+            this.dir = dir;
+            this.liveOutputs = liveOutputs;
+        }
+    }
+    
+    private static class OutputReference extends WeakReference<BufferedImage> {
+        private final JobDirectory directory;
+        
+        OutputReference(BufferedImage image, JobDirectory directory, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.directory = directory;
+        }
+    }
+}
+
+// ================= SharedImageFile 클래스 =================
+// 파이썬 워커와 주고받는 메모리 매핑 이미지 파일 - 32바이트 헤더 + 압축 없는 픽셀 (RGBA 또는 회색)
+// 헤더 (little endian): "RVIM", 버전, 너비, 높이, 채널 수(1 또는 4), 예약 3개
+class SharedImageFile {
+    public static final String EXTENSION = ".rgba";
+    private static final byte[] MAGIC = { 'R', 'V', 'I', 'M' };
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    
+    public static boolean isSharedImageFile(File file) {
+        return file.getName().toLowerCase().endsWith(EXTENSION);
+    }
+    
+    // 픽셀을 한 번 복사해서 씀 (인코딩 없음) - 회색 이미지는 1채널로
+    public static void write(BufferedImage image, File file) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        int channels = gray ? 1 : 4;
+        
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) width * height * channels);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            
+            buffer.put(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(width);
+            buffer.putInt(height);
+            buffer.putInt(channels);
+            buffer.position(HEADER_SIZE);
+            
+            if (gray) {
+                byte[] row = new byte[width];
+                Raster raster = image.getRaster();
+                for (int y = 0; y < height; y++) {
+                    raster.getDataElements(0, y, width, 1, row);
+                    buffer.put(row);
+                }
+            } else {
+                int[] argb = new int[width];
+                byte[] row = new byte[width * 4];
+                for (int y = 0; y < height; y++) {
+                    image.getRGB(0, y, width, 1, argb, 0, width);
+                    for (int x = 0; x < width; x++) {
+                        int pixel = argb[x];
+                        row[x * 4] = (byte) (pixel >> 16);
+                        row[x * 4 + 1] = (byte) (pixel >> 8);
+                        row[x * 4 + 2] = (byte) pixel;
+                        row[x * 4 + 3] = (byte) (pixel >>> 24);
+                    }
+                    buffer.put(row);
+                }
+            }
+        }
+    }
+    
+    // 파일을 매핑한 버퍼를 그대로 래스터로 사용 (복사 없음)
+    // 읽기 전용 매핑이므로 결과 이미지에 그리면 ReadOnlyBufferException 이 남 (노드 이미지는 바꾸지 않음)
+    public static BufferedImage map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("공유 이미지 헤더가 없습니다: " + file.getName());
+            }
+            
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            int version = buffer.getInt();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int channels = buffer.getInt();
+            
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                throw new IOException("공유 이미지 형식이 아닙니다: " + file.getName());
+            }
+            if ((channels != 1 && channels != 4) || width <= 0 || height <= 0 ||
+                channel.size() < HEADER_SIZE + (long) width * height * channels) {
+                throw new IOException("공유 이미지 크기가 맞지 않습니다: " + file.getName());
+            }
+            
+            int[] bandOffsets = channels == 1 ? new int[] { 0 } : new int[] { 0, 1, 2, 3 };
+            PixelInterleavedSampleModel sampleModel = new PixelInterleavedSampleModel(
+                DataBuffer.TYPE_BYTE, width, height, channels, width * channels, bandOffsets);
+            DataBuffer dataBuffer = new MappedDataBuffer(buffer, HEADER_SIZE, width * height * channels);
+            WritableRaster raster = Raster.createWritableRaster(sampleModel, dataBuffer, null);
+            
+            ComponentColorModel colorModel = channels == 1
+                ? new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY), false, false,
+                    Transparency.OPAQUE, DataBuffer.TYPE_BYTE)
+                : new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), true, false,
+                    Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+            
+            return new BufferedImage(colorModel, raster, false, null);
+        }
+    }
+    
+    // 매핑된 버퍼의 바이트를 직접 읽고 쓰는 DataBuffer - 그리기, 저장은 OffHeapDataBuffer.toHeapImage 복사본으로
+    private static class MappedDataBuffer extends OffHeapDataBuffer {
+        private final ByteBuffer buffer;
+        private final int offset;
+        
+        MappedDataBuffer(ByteBuffer buffer, int offset, int size) {
+            super(DataBuffer.TYPE_BYTE, size);
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+        
+        @Override
+        protected ByteBuffer getPixelBytes() {
+            ByteBuffer bytes = buffer.duplicate();
+            bytes.position(offset);
+            return bytes.slice();
+        }
+        
+        @Override
+        public int getElem(int bank, int i) {
+            return buffer.get(offset + i) & 0xff;
+        }
+        
+        @Override
+        public void setElem(int bank, int i, int val) {
+            buffer.put(offset + i, (byte) val);
+        }
+    }
+}
+
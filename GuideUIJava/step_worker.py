@@ -0,0 +1,187 @@
+## Made by : ravendev ( dwfree74@naver.com / elca6659@gmail.com)
+##           https://github.com/ravendev-team/ravendev-ai
+##
+## Java UI 의 상주 스텝 워커 (PythonWorkerPool 이 실행)
+## 모델을 한 번만 로드해 두고 stdin 으로 작업을 받아 stdout 으로 결과를 돌려줌
+##
+## 요청 (탭으로 구분, 한 줄에 하나)
+##   PING <id>
+##   JOB  <id> <출력 폴더> <입력 파일 1> [<입력 파일 2> ...]
+##   CANCEL <id>
+##   QUIT
+## 응답
+##   READY <스텝>              모델 로드 완료
+##   PONG  <id>
+##   PROGRESS <id> <0~1>       작업 중간 진행률
+##   OUTPUT <id> <출력 파일>   출력 파일 하나가 만들어질 때마다
+##   OK    <id> <출력 파일 1> [<출력 파일 2> ...]
+##   ERROR <id> <메시지>
+##
+## 입력이 .rgba 이면 출력도 .rgba 로 씀 - 32바이트 헤더 + 압축 없는 픽셀 (Java 의 SharedImageFile)
+##   헤더 (little endian): "RVIM", 버전, 너비, 높이, 채널 수(1 또는 4), 예약 3개
+##   read_shared_image / write_shared_image 는 mmap 으로 읽고 써서 PNG 인코딩을 하지 않음
+##
+## --stub 으로 실행하면 모델 없이 입력 이미지를 각 출력 이름으로 복사함 (연동 테스트용)
+import argparse
+import mmap
+import os
+import queue
+import shutil
+import struct
+import sys
+import threading
+import time
+
+SHARED_EXTENSION = '.rgba'
+SHARED_HEADER = struct.Struct('<4s7i')
+
+# 스텝별 출력 파일 이름 (Java 쪽 images 폴더의 이름과 같음)
+STEP_OUTPUTS = {
+    'STEP01': ['debug_full_mask.png', 'background.png', 'output_no_bg.png'],
+    'STEP02': ['lama_output.png'],
+    'STEP04': ['360_view_001_000deg_from_000deg.png',
+               '360_view_002_045deg_from_060deg.png',
+               '360_view_003_090deg_from_090deg.png',
+               '360_view_004_135deg_from_090deg.png',
+               '360_view_005_180deg_from_180deg.png',
+               '360_view_006_225deg_from_240deg.png',
+               '360_view_007_270deg_from_270deg.png',
+               '360_view_008_315deg_from_000deg.png'],
+    'STEP05': ['step05_output.png'],
+}
+
+
+# (너비, 높이, 채널 수, 픽셀 memoryview) - numpy 가 있으면
+#   np.frombuffer(pixels, np.uint8).reshape(height, width, channels) 로 복사 없이 배열로 사용
+def read_shared_image(path):
+    with open(path, 'rb') as f:
+        mapped = mmap.mmap(f.fileno(), 0, access=mmap.ACCESS_READ)
+    magic, version, width, height, channels = SHARED_HEADER.unpack_from(mapped, 0)[:5]
+    if magic != b'RVIM' or version != 1:
+        raise ValueError('공유 이미지 형식이 아닙니다: ' + path)
+    return width, height, channels, memoryview(mapped)[SHARED_HEADER.size:]
+
+
+# pixels 는 height * width * channels 바이트 (RGBA 또는 회색)
+def write_shared_image(path, width, height, channels, pixels):
+    size = SHARED_HEADER.size + width * height * channels
+    with open(path, 'w+b') as f:
+        f.truncate(size)
+        mapped = mmap.mmap(f.fileno(), size)
+        SHARED_HEADER.pack_into(mapped, 0, b'RVIM', 1, width, height, channels, 0, 0, 0)
+        mapped[SHARED_HEADER.size:] = bytes(memoryview(pixels).cast('B'))
+        mapped.close()
+
+
+class JobCancelled(Exception):
+    pass
+
+
+class Job:
+    def __init__(self, job_id, cancelled_ids):
+        self.job_id = job_id
+        self.cancelled_ids = cancelled_ids
+
+    def progress(self, fraction):
+        reply('PROGRESS', self.job_id, '%.3f' % fraction)
+
+    def output(self, path):
+        reply('OUTPUT', self.job_id, path)
+
+    def check_cancelled(self):
+        if self.job_id in self.cancelled_ids:
+            raise JobCancelled('취소됨')
+
+
+class StubModel:
+    def __init__(self, step, load_seconds, job_seconds):
+        # 실제 모델 로드 시간을 흉내냄
+        time.sleep(load_seconds)
+        self.step = step
+        self.job_seconds = job_seconds
+
+    def run(self, job, output_dir, input_files):
+        os.makedirs(output_dir, exist_ok=True)
+        names = STEP_OUTPUTS[self.step]
+        shared = input_files[0].lower().endswith(SHARED_EXTENSION)
+        outputs = []
+        for i, name in enumerate(names):
+            job.check_cancelled()
+            time.sleep(self.job_seconds / len(names))
+            if shared:
+                name = os.path.splitext(name)[0] + SHARED_EXTENSION
+            output_path = os.path.join(output_dir, name)
+            shutil.copyfile(input_files[0], output_path)
+            outputs.append(output_path)
+            job.output(output_path)
+            job.progress((i + 1) / len(names))
+        return outputs
+
+
+def load_model(step, stub, load_seconds, job_seconds):
+    if stub:
+        return StubModel(step, load_seconds, job_seconds)
+    # 실제 모델은 각 Step 스크립트를 함수로 정리한 뒤 여기서 한 번만 로드
+    raise RuntimeError('모델 워커가 아직 없습니다: ' + step + ' (--stub 으로 실행하세요)')
+
+
+reply_lock = threading.Lock()
+
+
+def reply(*fields):
+    with reply_lock:
+        sys.stdout.write('\t'.join(fields) + '\n')
+        sys.stdout.flush()
+
+
+# 작업 중에도 PING, CANCEL 에 답할 수 있도록 stdin 은 따로 읽음
+def read_requests(jobs, cancelled_ids):
+    for line in sys.stdin:
+        fields = line.rstrip('\r\n').split('\t')
+        if fields[0] == 'PING':
+            reply('PONG', fields[1])
+        elif fields[0] == 'CANCEL':
+            cancelled_ids.add(fields[1])
+        else:
+            jobs.put(fields)
+            if fields[0] == 'QUIT':
+                return
+    # stdin 이 닫히면 (Java 프로세스 종료) 같이 종료
+    jobs.put(['QUIT'])
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument('--step', required=True, choices=sorted(STEP_OUTPUTS.keys()))
+    parser.add_argument('--stub', action='store_true')
+    parser.add_argument('--load-seconds', type=float, default=0.0)
+    parser.add_argument('--job-seconds', type=float, default=0.0)
+    args = parser.parse_args()
+
+    sys.stdin.reconfigure(encoding='utf-8')
+    sys.stdout.reconfigure(encoding='utf-8')
+
+    model = load_model(args.step, args.stub, args.load_seconds, args.job_seconds)
+    reply('READY', args.step)
+
+    jobs = queue.Queue()
+    cancelled_ids = set()
+    reader = threading.Thread(target=read_requests, args=(jobs, cancelled_ids), daemon=True)
+    reader.start()
+
+    while True:
+        fields = jobs.get()
+        if fields[0] == 'QUIT':
+            break
+        elif fields[0] == 'JOB':
+            job = Job(fields[1], cancelled_ids)
+            try:
+                outputs = model.run(job, fields[2], fields[3:])
+                reply('OK', job.job_id, *outputs)
+            except Exception as e:
+                reply('ERROR', job.job_id, str(e).replace('\t', ' ').replace('\n', ' '))
+            cancelled_ids.discard(job.job_id)
+
+
+if __name__ == "__main__":
+    main()